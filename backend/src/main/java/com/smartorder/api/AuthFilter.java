@@ -89,13 +89,16 @@ public class AuthFilter extends OncePerRequestFilter {
     if (path.startsWith("/api/platform")) {
       return "PLATFORM".equals(role);
     }
-    if (path.startsWith("/api/users") || path.startsWith("/api/wallet")) {
+    if (path.startsWith("/api/users") || path.startsWith("/api/wallet") || path.startsWith("/api/promotions")) {
       return "ADMIN".equals(role);
     }
     if (path.startsWith("/api/menu/parse") || path.startsWith("/api/menu/ai-fill")
         || (path.startsWith("/api/menu/") && method.equals("PATCH"))) {
       return "ADMIN".equals(role);
     }
+    if (path.startsWith("/api/kitchen")) {
+      return "ADMIN".equals(role) || "KITCHEN".equals(role);
+    }
     if (path.startsWith("/api/tables")) {
       return "ADMIN".equals(role) || "CASHIER".equals(role);
     }
@@ -124,6 +127,9 @@ public class AuthFilter extends OncePerRequestFilter {
     if (path.startsWith("/api/wallet/") && path.split("/").length >= 4) {
       return path.split("/")[3];
     }
+    if ((path.startsWith("/api/promotions/") || path.startsWith("/api/kitchen/")) && path.split("/").length >= 4) {
+      return path.split("/")[3];
+    }
     return null;
   }
 
@@ -1,22 +1,30 @@
 package com.smartorder.api;
 
+import com.smartorder.api.dto.CartCheckoutRequest;
 import com.smartorder.api.dto.CartClearRequest;
 import com.smartorder.api.dto.CartItemRequest;
 import com.smartorder.api.dto.CartItemUpdateRequest;
+import com.smartorder.model.CartDelta;
+import com.smartorder.model.CartPricing;
+import com.smartorder.model.Order;
 import com.smartorder.model.TableCart;
 import com.smartorder.service.CartService;
-import com.smartorder.ws.WsPublisher;
+import com.smartorder.service.OrderIdempotency;
+import java.util.function.Supplier;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequestMapping("/api/cart")
 public class CartController {
   private final CartService cartService;
-  private final WsPublisher wsPublisher;
+  private final OrderIdempotency idempotency;
 
-  public CartController(CartService cartService, WsPublisher wsPublisher) {
+  public CartController(CartService cartService, OrderIdempotency idempotency) {
     this.cartService = cartService;
-    this.wsPublisher = wsPublisher;
+    this.idempotency = idempotency;
   }
 
   @GetMapping
@@ -24,46 +32,77 @@ public class CartController {
     return cartService.getCart(storeId, tableNo);
   }
 
+  @GetMapping("/pricing")
+  public CartPricing pricing(@RequestParam String storeId, @RequestParam String tableNo) {
+    return cartService.getPricing(storeId, tableNo);
+  }
+
   @PostMapping("/items")
-  public TableCart add(@RequestBody CartItemRequest request) {
-    TableCart cart = cartService.addItem(
+  public CartDelta add(@RequestBody CartItemRequest request) {
+    if (request.qty != null && request.qty <= 0) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "qty must be positive");
+    }
+    return locked(() -> cartService.addItem(
         request.storeId,
         request.tableNo,
         request.dishId,
-        request.dishName,
-        request.unitPrice,
         request.qty == null ? 1 : request.qty,
         request.selectedOptions
-    );
-    wsPublisher.publish("CART_UPDATED", cart);
-    return cart;
+    ));
   }
 
   @PatchMapping("/items")
-  public TableCart update(@RequestBody CartItemUpdateRequest request) {
-    TableCart cart = cartService.updateQty(
+  public CartDelta update(@RequestBody CartItemUpdateRequest request) {
+    return locked(() -> cartService.updateQty(
         request.storeId,
         request.tableNo,
         request.dishId,
         request.optionSignature,
         request.qty == null ? 0 : request.qty
-    );
-    wsPublisher.publish("CART_UPDATED", cart);
-    return cart;
+    ));
   }
 
   @DeleteMapping("/items")
-  public TableCart remove(@RequestParam String storeId, @RequestParam String tableNo, @RequestParam String dishId,
+  public CartDelta remove(@RequestParam String storeId, @RequestParam String tableNo, @RequestParam String dishId,
                           @RequestParam(required = false) String optionSignature) {
-    TableCart cart = cartService.removeItem(storeId, tableNo, dishId, optionSignature);
-    wsPublisher.publish("CART_UPDATED", cart);
-    return cart;
+    return locked(() -> cartService.removeItem(storeId, tableNo, dishId, optionSignature));
   }
 
   @PostMapping("/clear")
-  public TableCart clear(@RequestBody CartClearRequest request) {
-    TableCart cart = cartService.clear(request.storeId, request.tableNo);
-    wsPublisher.publish("CART_UPDATED", cart);
-    return cart;
+  public CartDelta clear(@RequestBody CartClearRequest request) {
+    return locked(() -> cartService.clear(request.storeId, request.tableNo));
+  }
+
+  @PostMapping("/checkout")
+  public Order checkout(@RequestBody CartCheckoutRequest request,
+                        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+    String key = idempotencyKey == null || idempotencyKey.isBlank() ? null : idempotencyKey.trim();
+    if (key != null && key.length() > 128) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Idempotency-Key too long");
+    }
+    Order existing = idempotency.lookup(request.storeId, key);
+    if (existing != null) {
+      return existing;
+    }
+    try {
+      Order order = cartService.checkout(request, key);
+      idempotency.remember(order);
+      return order;
+    } catch (DuplicateKeyException ex) {
+      if (key == null) throw ex;
+      return idempotency.resolveDuplicate(request.storeId, key);
+    } catch (IllegalArgumentException ex) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+  }
+
+  private CartDelta locked(Supplier<CartDelta> change) {
+    try {
+      return change.get();
+    } catch (IllegalStateException ex) {
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    } catch (IllegalArgumentException ex) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
   }
 }
@@ -0,0 +1,20 @@
+package com.smartorder.api;
+
+import com.smartorder.model.PrepBoard;
+import com.smartorder.service.PrepBoardService;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/kitchen")
+public class KitchenController {
+  private final PrepBoardService prepBoardService;
+
+  public KitchenController(PrepBoardService prepBoardService) {
+    this.prepBoardService = prepBoardService;
+  }
+
+  @GetMapping("/{storeId}/prep-board")
+  public PrepBoard prepBoard(@PathVariable String storeId) {
+    return prepBoardService.get(storeId);
+  }
+}
@@ -6,13 +6,22 @@ import com.smartorder.api.dto.CreateDishRequest;
 import com.smartorder.api.dto.ParseMenuRequest;
 import com.smartorder.api.dto.UpdateDishRequest;
 import com.smartorder.model.Dish;
+import com.smartorder.model.DishPage;
+import com.smartorder.model.DishSummary;
 import com.smartorder.model.Menu;
 import com.smartorder.model.MenuCategory;
+import com.smartorder.model.MenuPatch;
+import com.smartorder.model.Money;
 import com.smartorder.service.BillingService;
 import com.smartorder.service.MenuService;
+import com.smartorder.service.MenuPayload;
+import com.smartorder.service.MenuSnapshot;
 import com.smartorder.service.OpenAiService;
 import com.smartorder.ws.WsPublisher;
+import com.smartorder.ws.WsTopics;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.Base64;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,8 +29,11 @@ import java.util.Map;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PatchMapping;
@@ -29,6 +41,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.multipart.MultipartFile;
@@ -43,20 +56,106 @@ public class MenuController {
   private final OpenAiService openAiService;
   private final BillingService billingService;
   private final ObjectMapper objectMapper;
+  private final WsTopics topics;
   private static final Logger log = LoggerFactory.getLogger(MenuController.class);
+  private static final int MAX_DISH_PAGE = 200;
 
   public MenuController(MenuService menuService, WsPublisher wsPublisher, OpenAiService openAiService, BillingService billingService,
-                        ObjectMapper objectMapper) {
+                        ObjectMapper objectMapper, WsTopics topics) {
     this.menuService = menuService;
     this.wsPublisher = wsPublisher;
     this.openAiService = openAiService;
     this.billingService = billingService;
     this.objectMapper = objectMapper;
+    this.topics = topics;
   }
 
   @GetMapping("/{storeId}")
-  public Menu getMenu(@PathVariable String storeId) {
-    return menuService.getMenu(storeId);
+  public void getMenu(@PathVariable String storeId, WebRequest request, HttpServletResponse response) throws IOException {
+    MenuSnapshot snapshot = menuService.snapshot(storeId);
+    writePayload(snapshot, snapshot.fullPayload(), request, response);
+  }
+
+  @GetMapping("/{storeId}/lite")
+  public void getLiteMenu(@PathVariable String storeId, WebRequest request, HttpServletResponse response) throws IOException {
+    MenuSnapshot snapshot = menuService.snapshot(storeId);
+    writePayload(snapshot, snapshot.litePayload(), request, response);
+  }
+
+  @GetMapping("/{storeId}/dishes")
+  public ResponseEntity<List<DishSummary>> listDishes(
+      @PathVariable String storeId,
+      @RequestParam(required = false) String categoryId,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "50") int limit,
+      WebRequest request) {
+    MenuSnapshot snapshot = menuService.snapshot(storeId);
+    if (request.checkNotModified(snapshot.etag())) {
+      return null;
+    }
+    DishPage page;
+    try {
+      page = snapshot.dishPage(categoryId, cursor, Math.max(1, Math.min(limit, MAX_DISH_PAGE)));
+    } catch (IllegalArgumentException ex) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+    ResponseEntity.BodyBuilder builder = ResponseEntity.ok().eTag(snapshot.etag()).cacheControl(CacheControl.noCache());
+    if (page.nextCursor != null) {
+      builder.header("X-Next-Cursor", page.nextCursor);
+    }
+    return builder.body(page.items);
+  }
+
+  @GetMapping("/{storeId}/dishes/{dishId}")
+  public ResponseEntity<Dish> getDish(@PathVariable String storeId, @PathVariable String dishId, WebRequest request) {
+    MenuSnapshot snapshot = menuService.snapshot(storeId);
+    Dish dish = snapshot.dish(dishId);
+    if (dish == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Dish not found");
+    }
+    if (request.checkNotModified(snapshot.etag())) {
+      return null;
+    }
+    return ResponseEntity.ok().eTag(snapshot.etag()).cacheControl(CacheControl.noCache()).body(dish);
+  }
+
+  private void writePayload(MenuSnapshot snapshot, MenuPayload payload, WebRequest request, HttpServletResponse response)
+      throws IOException {
+    boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+    if (request.checkNotModified(snapshot.etag())) {
+      menuService.recordServed(payload, gzip, true);
+      return;
+    }
+    byte[] body = gzip ? payload.gzip() : payload.json();
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    if (gzip) {
+      response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+    menuService.recordServed(payload, gzip, false);
+  }
+
+  private boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) return false;
+    for (String part : acceptEncoding.split(",")) {
+      String[] params = part.trim().split(";");
+      if (!params[0].trim().equalsIgnoreCase("gzip")) continue;
+      for (int i = 1; i < params.length; i++) {
+        String param = params[i].trim().replace(" ", "");
+        if (param.startsWith("q=")) {
+          try {
+            return Double.parseDouble(param.substring(2)) > 0;
+          } catch (NumberFormatException ex) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+    return false;
   }
 
   @PatchMapping("/{storeId}/dishes/{dishId}")
@@ -82,7 +181,7 @@ public class MenuController {
     if (updated == null) {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Dish not found");
     }
-    wsPublisher.publish("MENU_UPDATED", Map.of("storeId", storeId));
+    wsPublisher.publish("MENU_UPDATED", Map.of("storeId", storeId), topics.menu(storeId));
     return updated;
   }
 
@@ -111,7 +210,7 @@ public class MenuController {
     if (created == null) {
       throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Category not found");
     }
-    wsPublisher.publish("MENU_UPDATED", Map.of("storeId", storeId));
+    wsPublisher.publish("MENU_UPDATED", Map.of("storeId", storeId), topics.menu(storeId));
     return created;
   }
 
@@ -152,11 +251,12 @@ public class MenuController {
     } else if (parsed.categories == null || parsed.categories.isEmpty()) {
       log.warn("Menu parse returned empty categories: storeId={}", request.storeId);
     } else {
-      menuService.replaceMenu(request.storeId, toCategories(parsed));
-      log.info("Menu parse saved: storeId={} categories={}", request.storeId, parsed.categories.size());
+      MenuPatch patch = menuService.replaceMenu(request.storeId, toCategories(parsed));
+      log.info("Menu parse saved: storeId={} categories={} rowsWritten={} naiveRows={}",
+          request.storeId, parsed.categories.size(), patch.rowsWritten, patch.naiveRows);
+      wsPublisher.publish("MENU_PATCHED", patch, topics.menu(request.storeId));
     }
     billingService.recordAiCall(request.storeId, extractTokens(result));
-    wsPublisher.publish("MENU_UPDATED", Map.of("storeId", request.storeId));
     return result;
   }
 
@@ -185,11 +285,12 @@ public class MenuController {
     } else if (parsed.categories == null || parsed.categories.isEmpty()) {
       log.warn("Menu parse-file returned empty categories: storeId={}", resolvedStoreId);
     } else {
-      menuService.replaceMenu(resolvedStoreId, toCategories(parsed));
-      log.info("Menu parse-file saved: storeId={} categories={}", resolvedStoreId, parsed.categories.size());
+      MenuPatch patch = menuService.replaceMenu(resolvedStoreId, toCategories(parsed));
+      log.info("Menu parse-file saved: storeId={} categories={} rowsWritten={} naiveRows={}",
+          resolvedStoreId, parsed.categories.size(), patch.rowsWritten, patch.naiveRows);
+      wsPublisher.publish("MENU_PATCHED", patch, topics.menu(resolvedStoreId));
     }
     billingService.recordAiCall(resolvedStoreId, extractTokens(result));
-    wsPublisher.publish("MENU_UPDATED", Map.of("storeId", resolvedStoreId));
     return result;
   }
 
@@ -273,7 +374,7 @@ public class MenuController {
           Dish dish = new Dish();
           dish.name = pd.name;
           dish.description = pd.description;
-          dish.price = pd.price;
+          dish.price = Money.of(pd.price);
           category.dishes.add(dish);
         }
       }
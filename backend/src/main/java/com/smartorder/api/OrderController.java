@@ -1,19 +1,34 @@
 package com.smartorder.api;
 
 import com.smartorder.api.dto.CreateOrderRequest;
+import com.smartorder.api.dto.OrderBatchUpdateRequest;
+import com.smartorder.api.dto.OrderBatchUpdateResult;
 import com.smartorder.api.dto.PaymentUpdateRequest;
 import com.smartorder.api.dto.StatusUpdateRequest;
 import com.smartorder.model.Order;
+import com.smartorder.model.OrderDelta;
+import com.smartorder.model.OrderPage;
+import com.smartorder.service.OrderIdempotency;
+import com.smartorder.service.OrderIngestQueue;
 import com.smartorder.service.OrderService;
-import com.smartorder.ws.WsPublisher;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -21,53 +36,137 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
+  private static final int MAX_BATCH = 200;
+
   private final OrderService orderService;
-  private final WsPublisher wsPublisher;
+  private final OrderIngestQueue ingestQueue;
+  private final OrderIdempotency idempotency;
+  private final long ingestTimeoutMs;
 
-  public OrderController(OrderService orderService, WsPublisher wsPublisher) {
+  public OrderController(OrderService orderService, OrderIngestQueue ingestQueue, OrderIdempotency idempotency,
+                         @Value("${app.orders.ingest.await-timeout-ms:5000}") long ingestTimeoutMs) {
     this.orderService = orderService;
-    this.wsPublisher = wsPublisher;
+    this.ingestQueue = ingestQueue;
+    this.idempotency = idempotency;
+    this.ingestTimeoutMs = ingestTimeoutMs;
   }
 
   @PostMapping
-  public Order create(@RequestBody CreateOrderRequest request) {
-    Order order = orderService.createOrder(request);
-    wsPublisher.publish("ORDER_CREATED", order);
-    wsPublisher.publish("TABLE_UPDATED", request.tableNo);
-    return order;
+  public Order create(@RequestBody CreateOrderRequest request,
+                      @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey)
+      throws InterruptedException {
+    String key = idempotencyKey == null || idempotencyKey.isBlank() ? null : idempotencyKey.trim();
+    if (key != null && key.length() > 128) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.BAD_REQUEST, "Idempotency-Key too long");
+    }
+    Order existing = idempotency.lookup(request.storeId, key);
+    if (existing != null) {
+      return existing;
+    }
+    Order order;
+    try {
+      order = orderService.prepareOrder(request);
+    } catch (IllegalArgumentException ex) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+    order.idempotencyKey = key;
+    try {
+      Order created = submit(order);
+      idempotency.remember(created);
+      return created;
+    } catch (DuplicateKeyException ex) {
+      if (key == null) throw ex;
+      return idempotency.resolveDuplicate(request.storeId, key);
+    }
+  }
+
+  private Order submit(Order order) throws InterruptedException {
+    if (!ingestQueue.isEnabled()) {
+      orderService.writeOrders(List.of(order));
+      return order;
+    }
+    try {
+      return ingestQueue.submit(order).get(ingestTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException | TimeoutException ex) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Order intake busy, retry");
+    } catch (ExecutionException ex) {
+      throw ex.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(ex.getCause());
+    }
   }
 
   @GetMapping
-  public List<Order> list(
+  public ResponseEntity<List<Order>> list(
       @RequestParam(required = false) String storeId,
       @RequestParam(required = false) String tableNo,
-      @RequestParam(required = false) String status) {
-    return orderService.listOrders(storeId, tableNo, status);
+      @RequestParam(required = false) String status,
+      @RequestParam(defaultValue = "false") boolean open,
+      @RequestParam(required = false) String since,
+      @RequestParam(required = false) String until,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "50") int limit,
+      @RequestParam(defaultValue = "full") String view) {
+    OrderPage page;
+    try {
+      page = orderService.listOrders(storeId, tableNo, status, open, parseInstant(since), parseInstant(until),
+          cursor, limit, !"summary".equals(view));
+    } catch (IllegalArgumentException | DateTimeParseException ex) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid query");
+    }
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+    if (page.nextCursor != null) {
+      response.header("X-Next-Cursor", page.nextCursor);
+    }
+    return response.body(page.items);
   }
 
   @PatchMapping("/{id}/status")
-  public Order updateStatus(@PathVariable String id, @RequestBody StatusUpdateRequest request, HttpServletRequest http) {
-    Order order = orderService.updateStatus(id, request);
-    enforceStore(order, http);
-    wsPublisher.publish("ORDER_UPDATED", order);
-    return order;
+  public Object updateStatus(@PathVariable String id, @RequestBody StatusUpdateRequest request,
+                             @RequestParam(required = false) String view, HttpServletRequest http) {
+    if (request.status == null || request.status.predecessors().isEmpty()) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid status");
+    }
+    OrderDelta delta;
+    try {
+      delta = orderService.updateStatus(id, authStoreId(http), request);
+    } catch (IllegalArgumentException ex) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.NOT_FOUND, ex.getMessage());
+    } catch (IllegalStateException ex) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.CONFLICT, ex.getMessage());
+    }
+    return "full".equals(view) ? orderService.getOrder(id) : delta;
   }
 
   @PatchMapping("/{id}/payment")
-  public Order updatePayment(@PathVariable String id, @RequestBody PaymentUpdateRequest request, HttpServletRequest http) {
-    Order order = orderService.updatePayment(id, request);
-    enforceStore(order, http);
-    wsPublisher.publish("ORDER_UPDATED", order);
-    wsPublisher.publish("TABLE_UPDATED", order.tableNo);
-    return order;
+  public Object updatePayment(@PathVariable String id, @RequestBody PaymentUpdateRequest request,
+                              @RequestParam(required = false) String view, HttpServletRequest http) {
+    if (request.paymentStatus == null) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid payment status");
+    }
+    OrderDelta delta;
+    try {
+      delta = orderService.updatePayment(id, authStoreId(http), request);
+    } catch (IllegalArgumentException ex) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.NOT_FOUND, ex.getMessage());
+    } catch (IllegalStateException ex) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.CONFLICT, ex.getMessage());
+    }
+    return "full".equals(view) ? orderService.getOrder(id) : delta;
   }
 
-  private void enforceStore(Order order, HttpServletRequest http) {
-    Object storeAttr = http.getAttribute("auth.storeId");
-    if (storeAttr instanceof String storeId && order != null && order.storeId != null) {
-      if (!storeId.equals(order.storeId)) {
-        throw new org.springframework.web.server.ResponseStatusException(HttpStatus.FORBIDDEN, "Forbidden");
-      }
+  @PatchMapping("/batch")
+  public List<OrderBatchUpdateResult> updateBatch(@RequestBody OrderBatchUpdateRequest request, HttpServletRequest http) {
+    if (request.updates != null && request.updates.size() > MAX_BATCH) {
+      throw new org.springframework.web.server.ResponseStatusException(HttpStatus.BAD_REQUEST, "Too many updates");
     }
+    return orderService.updateBatch(authStoreId(http), request);
+  }
+
+  private Instant parseInstant(String value) {
+    return value == null || value.isBlank() ? null : Instant.parse(value);
+  }
+
+  private String authStoreId(HttpServletRequest http) {
+    Object storeAttr = http.getAttribute("auth.storeId");
+    return storeAttr instanceof String storeId ? storeId : null;
   }
 }
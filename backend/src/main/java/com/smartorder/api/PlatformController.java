@@ -4,6 +4,7 @@ import com.smartorder.api.dto.PlatformLoginRequest;
 import com.smartorder.api.dto.PricingUpdateRequest;
 import com.smartorder.api.dto.RenewRequest;
 import com.smartorder.api.dto.TopupRequest;
+import com.smartorder.model.Money;
 import com.smartorder.model.Pricing;
 import com.smartorder.model.User;
 import com.smartorder.service.AuthService;
@@ -49,9 +50,9 @@ public class PlatformController {
   @PostMapping("/pricing")
   public Pricing updatePricing(@RequestBody PricingUpdateRequest request) {
     Pricing pricing = new Pricing();
-    pricing.platformMonthlyFee = request.platformMonthlyFee;
-    pricing.storeMonthlyFee = request.storeMonthlyFee;
-    pricing.aiCallPrice = request.aiCallPrice;
+    pricing.platformMonthlyFee = request.platformMonthlyFee == null ? Money.ZERO : request.platformMonthlyFee;
+    pricing.storeMonthlyFee = request.storeMonthlyFee == null ? Money.ZERO : request.storeMonthlyFee;
+    pricing.aiCallPrice = request.aiCallPrice == null ? Money.ZERO : request.aiCallPrice;
     return billingService.updatePricing(pricing);
   }
 
@@ -62,7 +63,8 @@ public class PlatformController {
 
   @PostMapping("/stores/{storeId}/topup")
   public Object topup(@PathVariable String storeId, @RequestBody TopupRequest request) {
-    return billingService.topup(storeId, request.amount, request.reason == null ? "Manual topup" : request.reason);
+    Money amount = request.amount == null ? Money.ZERO : request.amount;
+    return billingService.topup(storeId, amount, request.reason == null ? "Manual topup" : request.reason);
   }
 
   @PostMapping("/stores/{storeId}/subscription/pause")
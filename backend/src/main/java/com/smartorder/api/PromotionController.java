@@ -0,0 +1,39 @@
+package com.smartorder.api;
+
+import com.smartorder.model.Promotion;
+import com.smartorder.service.PromotionService;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/promotions")
+public class PromotionController {
+  private final PromotionService promotionService;
+
+  public PromotionController(PromotionService promotionService) {
+    this.promotionService = promotionService;
+  }
+
+  @GetMapping("/{storeId}")
+  public List<Promotion> list(@PathVariable String storeId) {
+    return promotionService.list(storeId);
+  }
+
+  @PostMapping("/{storeId}")
+  public Promotion create(@PathVariable String storeId, @RequestBody Promotion promotion) {
+    try {
+      return promotionService.create(storeId, promotion);
+    } catch (IllegalArgumentException ex) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+  }
+
+  @DeleteMapping("/{storeId}/{promotionId}")
+  public void delete(@PathVariable String storeId, @PathVariable String promotionId) {
+    if (!promotionService.delete(storeId, promotionId)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Promotion not found");
+    }
+  }
+}
@@ -8,7 +8,6 @@ import com.smartorder.model.TableInfo;
 import com.smartorder.service.TableCodeService;
 import com.smartorder.service.OrderService;
 import com.smartorder.service.TableService;
-import com.smartorder.ws.WsPublisher;
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -25,13 +24,11 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/api/tables")
 public class TableController {
   private final OrderService orderService;
-  private final WsPublisher wsPublisher;
   private final TableService tableService;
   private final TableCodeService tableCodeService;
 
-  public TableController(OrderService orderService, WsPublisher wsPublisher, TableService tableService, TableCodeService tableCodeService) {
+  public TableController(OrderService orderService, TableService tableService, TableCodeService tableCodeService) {
     this.orderService = orderService;
-    this.wsPublisher = wsPublisher;
     this.tableService = tableService;
     this.tableCodeService = tableCodeService;
   }
@@ -75,7 +72,6 @@ public class TableController {
   public Map<String, String> clear(@PathVariable String tableNo, @RequestBody ClearTableRequest request, HttpServletRequest http) {
     enforceStore(request.storeId, http);
     orderService.clearTable(request.storeId, tableNo, request.clearedBy);
-    wsPublisher.publish("TABLE_UPDATED", tableNo);
     return Map.of("status", "cleared", "tableNo", tableNo);
   }
 
@@ -83,8 +79,6 @@ public class TableController {
   public Map<String, Object> settle(@PathVariable String tableNo, @RequestBody SettleTableRequest request, HttpServletRequest http) {
     enforceStore(request.storeId, http);
     int count = orderService.settleTable(request.storeId, tableNo, request.paidBy);
-    wsPublisher.publish("TABLE_UPDATED", tableNo);
-    wsPublisher.publish("ORDER_UPDATED", Map.of("tableNo", tableNo, "count", count));
     return Map.of("status", "settled", "tableNo", tableNo, "orders", count);
   }
 
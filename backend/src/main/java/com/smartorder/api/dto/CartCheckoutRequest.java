@@ -0,0 +1,9 @@
+package com.smartorder.api.dto;
+
+public class CartCheckoutRequest {
+  public String storeId;
+  public String tableNo;
+  public Integer peopleCount;
+  public String remark;
+  public String clientId;
+}
@@ -1,7 +1,7 @@
 package com.smartorder.api.dto;
 
+import com.smartorder.model.Money;
 import com.smartorder.model.SelectedOption;
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,6 +11,6 @@ public class CartItemRequest {
   public String dishId;
   public String dishName;
   public Integer qty;
-  public BigDecimal unitPrice;
+  public Money unitPrice;
   public List<SelectedOption> selectedOptions = new ArrayList<>();
 }
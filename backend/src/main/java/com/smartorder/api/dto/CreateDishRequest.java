@@ -1,12 +1,12 @@
 package com.smartorder.api.dto;
 
-import java.math.BigDecimal;
+import com.smartorder.model.Money;
 import java.util.List;
 import com.smartorder.model.OptionGroup;
 
 public class CreateDishRequest {
   public String name;
-  public BigDecimal price;
+  public Money price;
   public String description;
   public String imageUrl;
   public String detailImageUrl;
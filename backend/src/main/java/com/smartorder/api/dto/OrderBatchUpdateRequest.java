@@ -0,0 +1,18 @@
+package com.smartorder.api.dto;
+
+import com.smartorder.model.OrderStatus;
+import com.smartorder.model.PaymentStatus;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OrderBatchUpdateRequest {
+  public String paidBy;
+  public List<Item> updates = new ArrayList<>();
+
+  public static class Item {
+    public String orderId;
+    public Long expectedVersion;
+    public OrderStatus status;
+    public PaymentStatus paymentStatus;
+  }
+}
@@ -0,0 +1,17 @@
+package com.smartorder.api.dto;
+
+import com.smartorder.model.OrderDelta;
+
+public class OrderBatchUpdateResult {
+  public String orderId;
+  public String outcome;
+  public OrderDelta order;
+
+  public OrderBatchUpdateResult() {}
+
+  public OrderBatchUpdateResult(String orderId, String outcome, OrderDelta order) {
+    this.orderId = orderId;
+    this.outcome = outcome;
+    this.order = order;
+  }
+}
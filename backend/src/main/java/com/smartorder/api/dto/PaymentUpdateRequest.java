@@ -5,4 +5,5 @@ import com.smartorder.model.PaymentStatus;
 public class PaymentUpdateRequest {
   public PaymentStatus paymentStatus;
   public String paidBy;
+  public Long version;
 }
@@ -1,7 +1,9 @@
 package com.smartorder.api.dto;
 
+import com.smartorder.model.Money;
+
 public class PricingUpdateRequest {
-  public double platformMonthlyFee;
-  public double storeMonthlyFee;
-  public double aiCallPrice;
+  public Money platformMonthlyFee;
+  public Money storeMonthlyFee;
+  public Money aiCallPrice;
 }
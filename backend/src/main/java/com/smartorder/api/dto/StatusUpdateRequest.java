@@ -4,4 +4,5 @@ import com.smartorder.model.OrderStatus;
 
 public class StatusUpdateRequest {
   public OrderStatus status;
+  public Long version;
 }
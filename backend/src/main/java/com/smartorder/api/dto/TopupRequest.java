@@ -1,6 +1,8 @@
 package com.smartorder.api.dto;
 
+import com.smartorder.model.Money;
+
 public class TopupRequest {
-  public double amount;
+  public Money amount;
   public String reason;
 }
@@ -1,9 +1,15 @@
 package com.smartorder.api.dto;
 
 public class WsEvent {
+  public String eventId;
+  public String storeId;
+  public long seq;
   public String type;
   public Object payload;
 
+  public WsEvent() {
+  }
+
   public WsEvent(String type, Object payload) {
     this.type = type;
     this.payload = payload;
@@ -0,0 +1,11 @@
+package com.smartorder.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+public class WsResume {
+  public String destination;
+  public String status; // OK, RESYNC
+  public long latestSeq;
+  @JsonRawValue
+  public String events = "[]";
+}
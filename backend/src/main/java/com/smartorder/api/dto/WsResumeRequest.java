@@ -0,0 +1,6 @@
+package com.smartorder.api.dto;
+
+public class WsResumeRequest {
+  public String destination;
+  public Long lastSeq;
+}
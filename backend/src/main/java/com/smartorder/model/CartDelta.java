@@ -0,0 +1,22 @@
+package com.smartorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CartDelta {
+  public String storeId;
+  public String tableNo;
+  public long baseVersion;
+  public long version;
+  public boolean cleared;
+  public List<CartItem> items = new ArrayList<>();
+
+  public CartDelta() {}
+
+  public CartDelta(String storeId, String tableNo, long version) {
+    this.storeId = storeId;
+    this.tableNo = tableNo;
+    this.baseVersion = version - 1;
+    this.version = version;
+  }
+}
@@ -1,6 +1,5 @@
 package com.smartorder.model;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -9,7 +8,7 @@ public class CartItem {
   public String dishId;
   public String dishName;
   public Integer qty;
-  public BigDecimal unitPrice;
+  public Money unitPrice;
   public List<SelectedOption> selectedOptions = new ArrayList<>();
   public String optionSignature;
 }
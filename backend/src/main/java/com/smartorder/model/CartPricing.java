@@ -0,0 +1,23 @@
+package com.smartorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CartPricing {
+  public String storeId;
+  public String tableNo;
+  public long version;
+  public Money subtotal;
+  public Money discount;
+  public Money total;
+  public List<LineDiscount> discounts = new ArrayList<>();
+
+  public static class LineDiscount {
+    public Long itemId;
+    public String dishId;
+    public String optionSignature;
+    public String promotionId;
+    public String promotionName;
+    public Money amount;
+  }
+}
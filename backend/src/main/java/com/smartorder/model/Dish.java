@@ -7,7 +7,7 @@ public class Dish {
   public String id;
   public String categoryId;
   public String name;
-  public java.math.BigDecimal price;
+  public Money price;
   public String description;
   public String imageUrl;
   public String detailImageUrl;
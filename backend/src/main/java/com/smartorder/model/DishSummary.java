@@ -0,0 +1,15 @@
+package com.smartorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DishSummary {
+  public String id;
+  public String categoryId;
+  public String name;
+  public Money price;
+  public String imageUrl;
+  public List<String> tags = new ArrayList<>();
+  public String spicyLevel;
+  public boolean hasOptions;
+}
@@ -7,6 +7,6 @@ public class LedgerEntry {
   public String storeId;
   public String type;
   public String reason;
-  public double amount;
+  public Money amount;
   public Instant createdAt;
 }
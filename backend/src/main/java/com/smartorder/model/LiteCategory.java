@@ -0,0 +1,10 @@
+package com.smartorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LiteCategory {
+  public String id;
+  public String name;
+  public List<DishSummary> dishes = new ArrayList<>();
+}
@@ -0,0 +1,9 @@
+package com.smartorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LiteMenu {
+  public String storeId;
+  public List<LiteCategory> categories = new ArrayList<>();
+}
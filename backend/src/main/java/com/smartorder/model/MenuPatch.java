@@ -0,0 +1,15 @@
+package com.smartorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MenuPatch {
+  public String storeId;
+  public long baseVersion;
+  public long version;
+  public List<LiteCategory> categories = new ArrayList<>();
+  public List<String> removedCategoryIds = new ArrayList<>();
+  public List<String> removedDishIds = new ArrayList<>();
+  public int rowsWritten;
+  public int naiveRows;
+}
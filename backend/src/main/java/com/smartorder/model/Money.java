@@ -0,0 +1,147 @@
+package com.smartorder.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Amounts are whole minor units (cents). Decimals are rounded half-up to the cent when they enter, which is also
+// what MySQL does when it stores into the DECIMAL(10,2) columns; arithmetic after that is exact and overflow-checked.
+@JsonSerialize(using = Money.Serializer.class)
+@JsonDeserialize(using = Money.Deserializer.class)
+public final class Money implements Comparable<Money> {
+  public static final String DEFAULT_CURRENCY = "USD";
+  public static final int SCALE = 2;
+  private static final long UNIT = 100;
+  public static final Money ZERO = new Money(0, DEFAULT_CURRENCY);
+
+  private final long minor;
+  private final String currency;
+
+  private Money(long minor, String currency) {
+    this.minor = minor;
+    this.currency = currency;
+  }
+
+  public static Money ofMinor(long minor) {
+    return minor == 0 ? ZERO : new Money(minor, DEFAULT_CURRENCY);
+  }
+
+  public static Money of(BigDecimal amount) {
+    if (amount == null) {
+      return null;
+    }
+    return ofMinor(amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+  }
+
+  public static Money parse(String amount) {
+    return of(new BigDecimal(amount.trim()));
+  }
+
+  public long minor() {
+    return minor;
+  }
+
+  public String currency() {
+    return currency;
+  }
+
+  public Money plus(Money other) {
+    return other.minor == 0 ? this : new Money(Math.addExact(minor, sameCurrency(other).minor), currency);
+  }
+
+  public Money minus(Money other) {
+    return other.minor == 0 ? this : new Money(Math.subtractExact(minor, sameCurrency(other).minor), currency);
+  }
+
+  public Money times(int qty) {
+    return qty == 1 ? this : new Money(Math.multiplyExact(minor, qty), currency);
+  }
+
+  public Money negate() {
+    return new Money(Math.negateExact(minor), currency);
+  }
+
+  public boolean isNegative() {
+    return minor < 0;
+  }
+
+  public BigDecimal toDecimal() {
+    return BigDecimal.valueOf(minor, SCALE);
+  }
+
+  @Override
+  public int compareTo(Money other) {
+    return Long.compare(minor, sameCurrency(other).minor);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Money other && minor == other.minor && currency.equals(other.currency);
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(minor) * 31 + currency.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    long units = minor / UNIT;
+    long cents = Math.abs(minor % UNIT);
+    StringBuilder out = new StringBuilder(24);
+    if (minor < 0 && units == 0) {
+      out.append('-');
+    }
+    out.append(units).append('.');
+    if (cents < 10) {
+      out.append('0');
+    }
+    return out.append(cents).toString();
+  }
+
+  private Money sameCurrency(Money other) {
+    if (!currency.equals(other.currency)) {
+      throw new IllegalArgumentException("Currency mismatch: " + currency + " vs " + other.currency);
+    }
+    return other;
+  }
+
+  public static class Serializer extends JsonSerializer<Money> {
+    @Override
+    public void serialize(Money value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+      gen.writeNumber(value.toString());
+    }
+  }
+
+  public static class Deserializer extends JsonDeserializer<Money> {
+    @Override
+    public Money deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+      switch (p.currentToken()) {
+        case VALUE_NUMBER_INT:
+          return ofMinor(Math.multiplyExact(p.getLongValue(), UNIT));
+        case VALUE_NUMBER_FLOAT:
+          return of(p.getDecimalValue());
+        case VALUE_STRING:
+          String text = p.getText();
+          if (text.isBlank()) {
+            return null;
+          }
+          try {
+            return parse(text);
+          } catch (NumberFormatException ex) {
+            return (Money) ctxt.handleWeirdStringValue(Money.class, text, "not a decimal amount");
+          }
+        default:
+          return (Money) ctxt.handleUnexpectedToken(Money.class, p);
+      }
+    }
+  }
+}
@@ -1,9 +1,7 @@
 package com.smartorder.model;
 
-import java.math.BigDecimal;
-
 public class OptionItem {
   public String id;
   public String name;
-  public BigDecimal extraPrice;
+  public Money extraPrice;
 }
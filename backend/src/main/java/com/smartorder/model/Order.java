@@ -1,6 +1,5 @@
 package com.smartorder.model;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -10,16 +9,19 @@ public class Order {
   public String storeId;
   public String tableNo;
   public String clientId;
+  public String idempotencyKey;
   public OrderStatus status;
   public PaymentStatus paymentStatus;
   public Integer peopleCount;
   public String remark;
-  public BigDecimal totalAmount;
+  public Money totalAmount;
+  public Money discountAmount = Money.ZERO;
   public Instant createdAt;
   public Instant updatedAt;
   public Instant paidAt;
   public String paidBy;
   public Instant clearedAt;
   public String clearedBy;
+  public long version;
   public List<OrderItem> items = new ArrayList<>();
 }
@@ -0,0 +1,13 @@
+package com.smartorder.model;
+
+import java.time.Instant;
+
+public class OrderDelta {
+  public String orderId;
+  public String storeId;
+  public String tableNo;
+  public OrderStatus status;
+  public PaymentStatus paymentStatus;
+  public long version;
+  public Instant updatedAt;
+}
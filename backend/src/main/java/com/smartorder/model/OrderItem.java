@@ -1,6 +1,5 @@
 package com.smartorder.model;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,8 +9,8 @@ public class OrderItem {
   public String dishId;
   public String dishName;
   public Integer qty;
-  public BigDecimal unitPrice;
-  public BigDecimal lineTotal;
+  public Money unitPrice;
+  public Money lineTotal;
   public List<SelectedOption> selectedOptions = new ArrayList<>();
   public String itemRemark;
 }
@@ -0,0 +1,9 @@
+package com.smartorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OrderPage {
+  public List<Order> items = new ArrayList<>();
+  public String nextCursor;
+}
@@ -1,8 +1,23 @@
 package com.smartorder.model;
 
+import java.util.List;
+
 public enum OrderStatus {
   NEW,
   ACCEPTED,
   READY,
-  CLOSED
+  CLOSED;
+
+  public List<OrderStatus> predecessors() {
+    return switch (this) {
+      case NEW -> List.of();
+      case ACCEPTED -> List.of(NEW);
+      case READY -> List.of(ACCEPTED);
+      case CLOSED -> List.of(NEW, ACCEPTED, READY);
+    };
+  }
+
+  public boolean inKitchen() {
+    return this == NEW || this == ACCEPTED;
+  }
 }
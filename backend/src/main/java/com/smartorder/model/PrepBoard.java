@@ -0,0 +1,10 @@
+package com.smartorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PrepBoard {
+  public String storeId;
+  public long version;
+  public List<PrepLine> lines = new ArrayList<>();
+}
@@ -0,0 +1,11 @@
+package com.smartorder.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PrepBoardDelta {
+  public String storeId;
+  public long baseVersion;
+  public long version;
+  public List<PrepLine> lines = new ArrayList<>();
+}
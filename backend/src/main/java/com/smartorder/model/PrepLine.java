@@ -0,0 +1,9 @@
+package com.smartorder.model;
+
+public class PrepLine {
+  public String dishId;
+  public String dishName;
+  public String optionSignature;
+  public String options;
+  public int qty;
+}
@@ -1,7 +1,7 @@
 package com.smartorder.model;
 
 public class Pricing {
-  public double platformMonthlyFee;
-  public double storeMonthlyFee;
-  public double aiCallPrice;
+  public Money platformMonthlyFee;
+  public Money storeMonthlyFee;
+  public Money aiCallPrice;
 }
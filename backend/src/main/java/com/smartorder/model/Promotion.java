@@ -0,0 +1,18 @@
+package com.smartorder.model;
+
+import java.time.LocalTime;
+
+public class Promotion {
+  public String id;
+  public String storeId;
+  public String name;
+  public PromotionKind kind;
+  public PromotionScope scope;
+  public String targetId;
+  public Integer percentOff;
+  public Money amountOff;
+  public Integer nth;
+  public LocalTime startTime;
+  public LocalTime endTime;
+  public boolean active = true;
+}
@@ -0,0 +1,7 @@
+package com.smartorder.model;
+
+public enum PromotionKind {
+  PERCENT_OFF,
+  AMOUNT_OFF,
+  NTH_ITEM_PERCENT_OFF
+}
@@ -0,0 +1,7 @@
+package com.smartorder.model;
+
+public enum PromotionScope {
+  STORE,
+  CATEGORY,
+  DISH
+}
@@ -1,11 +1,9 @@
 package com.smartorder.model;
 
-import java.math.BigDecimal;
-
 public class SelectedOption {
   public String groupId;
   public String groupName;
   public String optionId;
   public String optionName;
-  public BigDecimal extraPrice;
+  public Money extraPrice;
 }
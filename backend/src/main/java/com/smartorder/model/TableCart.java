@@ -6,5 +6,6 @@ import java.util.List;
 public class TableCart {
   public String storeId;
   public String tableNo;
+  public long version;
   public List<CartItem> items = new ArrayList<>();
 }
@@ -5,6 +5,6 @@ import java.util.List;
 
 public class Wallet {
   public String storeId;
-  public double balance;
+  public Money balance;
   public List<LedgerEntry> ledger = new ArrayList<>();
 }
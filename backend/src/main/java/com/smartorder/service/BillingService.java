@@ -1,6 +1,7 @@
 package com.smartorder.service;
 
 import com.smartorder.model.LedgerEntry;
+import com.smartorder.model.Money;
 import com.smartorder.model.Pricing;
 import com.smartorder.model.Subscription;
 import com.smartorder.model.Wallet;
@@ -31,7 +32,7 @@ public class BillingService {
         (rs, rowNum) -> {
           Wallet wallet = new Wallet();
           wallet.storeId = rs.getString("store_id");
-          wallet.balance = rs.getDouble("balance");
+          wallet.balance = Money.of(rs.getBigDecimal("balance"));
           return wallet;
         });
     Wallet wallet;
@@ -39,7 +40,7 @@ public class BillingService {
       jdbcTemplate.update("INSERT INTO wallets (store_id, balance) VALUES (?, ?)", storeId, 0);
       wallet = new Wallet();
       wallet.storeId = storeId;
-      wallet.balance = 0;
+      wallet.balance = Money.ZERO;
     } else {
       wallet = list.get(0);
     }
@@ -53,7 +54,7 @@ public class BillingService {
           entry.storeId = rs.getString("store_id");
           entry.type = rs.getString("type");
           entry.reason = rs.getString("reason");
-          entry.amount = rs.getDouble("amount");
+          entry.amount = Money.of(rs.getBigDecimal("amount"));
           entry.createdAt = rs.getTimestamp("created_at").toInstant();
           return entry;
         });
@@ -113,22 +114,22 @@ public class BillingService {
         "SELECT * FROM platform_pricing WHERE id='default'",
         (rs, rowNum) -> {
           Pricing pricing = new Pricing();
-          pricing.platformMonthlyFee = rs.getDouble("platform_monthly_fee");
-          pricing.storeMonthlyFee = rs.getDouble("store_monthly_fee");
-          pricing.aiCallPrice = rs.getDouble("ai_call_price");
+          pricing.platformMonthlyFee = Money.of(rs.getBigDecimal("platform_monthly_fee"));
+          pricing.storeMonthlyFee = Money.of(rs.getBigDecimal("store_monthly_fee"));
+          pricing.aiCallPrice = Money.of(rs.getBigDecimal("ai_call_price"));
           return pricing;
         });
     if (!list.isEmpty()) return list.get(0);
 
     Pricing pricing = new Pricing();
-    pricing.platformMonthlyFee = 199.0;
-    pricing.storeMonthlyFee = 99.0;
-    pricing.aiCallPrice = 0.01;
+    pricing.platformMonthlyFee = Money.ofMinor(19900);
+    pricing.storeMonthlyFee = Money.ofMinor(9900);
+    pricing.aiCallPrice = Money.ofMinor(1);
     jdbcTemplate.update(
         "INSERT INTO platform_pricing (id, platform_monthly_fee, store_monthly_fee, ai_call_price) VALUES ('default', ?, ?, ?)",
-        pricing.platformMonthlyFee,
-        pricing.storeMonthlyFee,
-        pricing.aiCallPrice);
+        pricing.platformMonthlyFee.toDecimal(),
+        pricing.storeMonthlyFee.toDecimal(),
+        pricing.aiCallPrice.toDecimal());
     return pricing;
   }
 
@@ -139,16 +140,16 @@ public class BillingService {
     pricing.aiCallPrice = next.aiCallPrice;
     jdbcTemplate.update(
         "UPDATE platform_pricing SET platform_monthly_fee=?, store_monthly_fee=?, ai_call_price=? WHERE id='default'",
-        pricing.platformMonthlyFee,
-        pricing.storeMonthlyFee,
-        pricing.aiCallPrice);
+        pricing.platformMonthlyFee.toDecimal(),
+        pricing.storeMonthlyFee.toDecimal(),
+        pricing.aiCallPrice.toDecimal());
     return pricing;
   }
 
   @Transactional
-  public LedgerEntry topup(String storeId, double amount, String reason) {
+  public LedgerEntry topup(String storeId, Money amount, String reason) {
     getWallet(storeId);
-    jdbcTemplate.update("UPDATE wallets SET balance=balance+? WHERE store_id=?", amount, storeId);
+    jdbcTemplate.update("UPDATE wallets SET balance=balance+? WHERE store_id=?", amount.toDecimal(), storeId);
     LedgerEntry entry = createEntry(storeId, "TOPUP", reason, amount);
     jdbcTemplate.update(
         "INSERT INTO wallet_ledger (id, store_id, type, reason, amount, created_at) VALUES (?, ?, ?, ?, ?, ?)",
@@ -156,23 +157,23 @@ public class BillingService {
         entry.storeId,
         entry.type,
         entry.reason,
-        entry.amount,
+        entry.amount.toDecimal(),
         Timestamp.from(entry.createdAt));
     return entry;
   }
 
   @Transactional
-  public LedgerEntry charge(String storeId, String type, String reason, double amount) {
+  public LedgerEntry charge(String storeId, String type, String reason, Money amount) {
     getWallet(storeId);
-    jdbcTemplate.update("UPDATE wallets SET balance=balance-? WHERE store_id=?", amount, storeId);
-    LedgerEntry entry = createEntry(storeId, type, reason, -amount);
+    jdbcTemplate.update("UPDATE wallets SET balance=balance-? WHERE store_id=?", amount.toDecimal(), storeId);
+    LedgerEntry entry = createEntry(storeId, type, reason, amount.negate());
     jdbcTemplate.update(
         "INSERT INTO wallet_ledger (id, store_id, type, reason, amount, created_at) VALUES (?, ?, ?, ?, ?, ?)",
         entry.id,
         entry.storeId,
         entry.type,
         entry.reason,
-        entry.amount,
+        entry.amount.toDecimal(),
         Timestamp.from(entry.createdAt));
     return entry;
   }
@@ -197,7 +198,7 @@ public class BillingService {
   public void chargeStoreSubscription(String storeId) {
     Pricing pricing = getPricing();
     Wallet wallet = getWallet(storeId);
-    if (wallet.balance < pricing.storeMonthlyFee) {
+    if (wallet.balance.compareTo(pricing.storeMonthlyFee) < 0) {
       return;
     }
     charge(storeId, "SUBSCRIPTION", "Monthly store subscription", pricing.storeMonthlyFee);
@@ -242,7 +243,7 @@ public class BillingService {
             + "LEFT JOIN store_ai_usage u ON w.store_id = u.store_id",
         (rs, rowNum) -> Map.of(
             "storeId", rs.getString("store_id"),
-            "balance", rs.getDouble("balance"),
+            "balance", Money.of(rs.getBigDecimal("balance")),
             "subscriptionStatus", rs.getString("subscription_status"),
             "subscriptionExpireAt", rs.getTimestamp("subscription_expire_at"),
             "aiCalls", rs.getLong("ai_calls"),
@@ -272,7 +273,7 @@ public class BillingService {
     }
   }
 
-  private LedgerEntry createEntry(String storeId, String type, String reason, double amount) {
+  private LedgerEntry createEntry(String storeId, String type, String reason, Money amount) {
     LedgerEntry entry = new LedgerEntry();
     entry.id = UUID.randomUUID().toString();
     entry.storeId = storeId;
@@ -0,0 +1,156 @@
+package com.smartorder.service;
+
+import com.smartorder.model.CartDelta;
+import com.smartorder.model.CartItem;
+import com.smartorder.ws.WsPublisher;
+import com.smartorder.ws.WsTopics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CartEventCoalescer {
+  private static final Logger log = LoggerFactory.getLogger(CartEventCoalescer.class);
+
+  private final WsPublisher publisher;
+  private final WsTopics topics;
+  private final long windowMs;
+  private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "cart-events");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Counter submitted;
+  private final Counter published;
+
+  public CartEventCoalescer(WsPublisher publisher, WsTopics topics, MeterRegistry registry,
+                            @Value("${app.cart.events.coalesce-ms:150}") long windowMs) {
+    this.publisher = publisher;
+    this.topics = topics;
+    this.windowMs = windowMs;
+    this.submitted = Counter.builder("cart.events.submitted").register(registry);
+    this.published = Counter.builder("cart.events.published").register(registry);
+  }
+
+  public void submit(CartDelta delta) {
+    submitted.increment();
+    if (windowMs <= 0) {
+      publish(delta);
+      return;
+    }
+    String key = delta.storeId + "\n" + delta.tableNo;
+    boolean[] first = { false };
+    pending.compute(key, (k, current) -> {
+      if (current == null) {
+        first[0] = true;
+        current = new Pending(delta);
+      }
+      current.merge(delta);
+      return current;
+    });
+    if (first[0]) {
+      scheduler.schedule(() -> flush(key), windowMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdownNow();
+    pending.keySet().forEach(this::flush);
+  }
+
+  private void flush(String key) {
+    Pending batch = pending.remove(key);
+    if (batch != null) {
+      publish(batch.toDelta());
+    }
+  }
+
+  private void publish(CartDelta delta) {
+    try {
+      publisher.publish("CART_UPDATED", delta, topics.table(delta.storeId, delta.tableNo));
+      published.increment();
+    } catch (Exception ex) {
+      log.warn("Cart event publish failed: store={} table={} version={}", delta.storeId, delta.tableNo, delta.version, ex);
+    }
+  }
+
+  private static class Pending {
+    final String storeId;
+    final String tableNo;
+    long baseVersion;
+    long version;
+    long clearedAt = -1;
+    int steps;
+    final Map<String, CartItem> lines = new LinkedHashMap<>();
+    final Map<String, Long> lineVersions = new HashMap<>();
+
+    Pending(CartDelta first) {
+      this.storeId = first.storeId;
+      this.tableNo = first.tableNo;
+      this.baseVersion = first.baseVersion;
+      this.version = first.version;
+    }
+
+    void merge(CartDelta delta) {
+      baseVersion = Math.min(baseVersion, delta.baseVersion);
+      version = Math.max(version, delta.version);
+      steps += (int) (delta.version - delta.baseVersion);
+      if (delta.cleared && delta.version > clearedAt) {
+        clearedAt = delta.version;
+        lines.keySet().removeIf(line -> lineVersions.get(line) < delta.version);
+      }
+      if (delta.version < clearedAt) {
+        return;
+      }
+      for (CartItem item : delta.items) {
+        String line = item.dishId + "|" + item.optionSignature;
+        Long seen = lineVersions.get(line);
+        if (seen != null && seen > delta.version) continue;
+        CartItem existing = lines.get(line);
+        if (existing != null && item.dishName == null) {
+          existing.qty = item.qty;
+        } else {
+          lines.put(line, copy(item));
+        }
+        lineVersions.put(line, delta.version);
+      }
+    }
+
+    static CartItem copy(CartItem item) {
+      CartItem line = new CartItem();
+      line.id = item.id;
+      line.dishId = item.dishId;
+      line.dishName = item.dishName;
+      line.qty = item.qty;
+      line.unitPrice = item.unitPrice;
+      line.selectedOptions = item.selectedOptions;
+      line.optionSignature = item.optionSignature;
+      return line;
+    }
+
+    CartDelta toDelta() {
+      CartDelta delta = new CartDelta();
+      delta.storeId = storeId;
+      delta.tableNo = tableNo;
+      delta.version = version;
+      // a gap means some change in the range was not seen here (another node, or a late commit); make clients refetch
+      delta.baseVersion = steps == version - baseVersion ? baseVersion : version;
+      delta.cleared = clearedAt >= 0;
+      delta.items.addAll(lines.values());
+      return delta;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.smartorder.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CartLocks {
+  private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+      "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+      Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final boolean shared;
+  private final ReentrantLock[] stripes;
+  private final long waitMs;
+  private final long leaseMs;
+
+  public CartLocks(StringRedisTemplate redisTemplate,
+                   @Value("${app.cart.lock.mode:local}") String mode,
+                   @Value("${app.cart.lock.stripes:64}") int stripeCount,
+                   @Value("${app.cart.lock.wait-ms:2000}") long waitMs,
+                   @Value("${app.cart.lock.lease-ms:5000}") long leaseMs) {
+    this.redisTemplate = redisTemplate;
+    this.shared = "redis".equals(mode);
+    this.stripes = new ReentrantLock[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+    this.waitMs = waitMs;
+    this.leaseMs = leaseMs;
+  }
+
+  public <T> T withLock(String storeId, String tableNo, Supplier<T> work) {
+    return shared ? withLease(storeId, tableNo, work) : withStripe(storeId, tableNo, work);
+  }
+
+  private <T> T withStripe(String storeId, String tableNo, Supplier<T> work) {
+    ReentrantLock lock = stripes[Math.floorMod((storeId + "/" + tableNo).hashCode(), stripes.length)];
+    try {
+      if (!lock.tryLock(waitMs, TimeUnit.MILLISECONDS)) {
+        throw new IllegalStateException("Cart is busy");
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Cart is busy", ex);
+    }
+    try {
+      return work.get();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private <T> T withLease(String storeId, String tableNo, Supplier<T> work) {
+    String key = "cart:lock:" + storeId + ":" + tableNo;
+    String token = UUID.randomUUID().toString();
+    long deadline = System.currentTimeMillis() + waitMs;
+    long backoff = 2;
+    while (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, token, Duration.ofMillis(leaseMs)))) {
+      if (System.currentTimeMillis() >= deadline) {
+        throw new IllegalStateException("Cart is busy");
+      }
+      try {
+        Thread.sleep(backoff);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Cart is busy", ex);
+      }
+      backoff = Math.min(backoff * 2, 50);
+    }
+    try {
+      return work.get();
+    } finally {
+      redisTemplate.execute(RELEASE_SCRIPT, List.of(key), token);
+    }
+  }
+}
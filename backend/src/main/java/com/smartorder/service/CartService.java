@@ -1,231 +1,203 @@
 package com.smartorder.service;
 
+import com.smartorder.api.dto.CartCheckoutRequest;
+import com.smartorder.api.dto.CreateOrderRequest;
+import com.smartorder.model.CartDelta;
 import com.smartorder.model.CartItem;
+import com.smartorder.model.CartPricing;
+import com.smartorder.model.Money;
+import com.smartorder.model.Order;
+import com.smartorder.model.OrderItem;
 import com.smartorder.model.SelectedOption;
 import com.smartorder.model.TableCart;
-import java.math.BigDecimal;
-import java.sql.PreparedStatement;
-import java.sql.Statement;
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.ArrayList;
-import java.util.HashMap;
+import com.smartorder.model.TableStatus;
+import com.smartorder.ws.WsTopics;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 public class CartService {
-  private final JdbcTemplate jdbcTemplate;
-
-  public CartService(JdbcTemplate jdbcTemplate) {
-    this.jdbcTemplate = jdbcTemplate;
+  private static final Logger log = LoggerFactory.getLogger(CartService.class);
+
+  private final CartStore cartStore;
+  private final JdbcCartStore jdbcCartStore;
+  private final OrderService orderService;
+  private final MenuService menuService;
+  private final PromotionService promotionService;
+  private final PrepBoardService prepBoard;
+  private final TableService tableService;
+  private final OutboxService outboxService;
+  private final CartEventCoalescer cartEvents;
+  private final CartLocks cartLocks;
+  private final TransactionTemplate transactionTemplate;
+  private final WsTopics topics;
+
+  public CartService(CartStore cartStore, JdbcCartStore jdbcCartStore, OrderService orderService,
+                     MenuService menuService, PromotionService promotionService, PrepBoardService prepBoard,
+                     TableService tableService, OutboxService outboxService, CartEventCoalescer cartEvents,
+                     CartLocks cartLocks, TransactionTemplate transactionTemplate, WsTopics topics) {
+    this.cartStore = cartStore;
+    this.jdbcCartStore = jdbcCartStore;
+    this.orderService = orderService;
+    this.menuService = menuService;
+    this.promotionService = promotionService;
+    this.prepBoard = prepBoard;
+    this.tableService = tableService;
+    this.outboxService = outboxService;
+    this.cartEvents = cartEvents;
+    this.cartLocks = cartLocks;
+    this.transactionTemplate = transactionTemplate;
+    this.topics = topics;
   }
 
   public TableCart getCart(String storeId, String tableNo) {
-    Long cartId = getOrCreateCartId(storeId, tableNo);
-    TableCart cart = new TableCart();
-    cart.storeId = storeId;
-    cart.tableNo = tableNo;
-    cart.items = loadItems(cartId);
-    return cart;
+    return cartStore.get(storeId, tableNo);
   }
 
-  @Transactional
-  public TableCart addItem(String storeId, String tableNo, String dishId, String dishName, BigDecimal unitPrice,
-                           int qty, java.util.List<SelectedOption> selectedOptions) {
-    Long cartId = getOrCreateCartId(storeId, tableNo);
-    String signature = buildSignature(selectedOptions);
-    List<CartItem> items = jdbcTemplate.query(
-        "SELECT * FROM cart_items WHERE cart_id=? AND dish_id=? AND option_signature=?",
-        new Object[] { cartId, dishId, signature },
-        (rs, rowNum) -> {
-          CartItem item = new CartItem();
-          item.id = rs.getLong("id");
-          item.dishId = rs.getString("dish_id");
-          item.dishName = rs.getString("dish_name");
-          item.unitPrice = rs.getBigDecimal("unit_price");
-          item.qty = rs.getInt("qty");
-          item.optionSignature = rs.getString("option_signature");
-          item.selectedOptions = new ArrayList<>();
-          return item;
-        });
-
-    if (items.isEmpty()) {
-      long itemId = insertCartItem(cartId, dishId, dishName, unitPrice, qty, signature);
-      if (selectedOptions != null) {
-        for (SelectedOption option : selectedOptions) {
-          jdbcTemplate.update(
-              "INSERT INTO cart_item_options (cart_item_id, group_id, group_name, option_id, option_name, extra_price) "
-                  + "VALUES (?, ?, ?, ?, ?, ?)",
-              itemId,
-              option.groupId,
-              option.groupName,
-              option.optionId,
-              option.optionName,
-              option.extraPrice == null ? BigDecimal.ZERO : option.extraPrice);
-        }
-      }
-    } else {
-      CartItem existing = items.get(0);
-      jdbcTemplate.update(
-          "UPDATE cart_items SET qty=? WHERE id=?",
-          existing.qty + qty,
-          existing.id);
-    }
-    touchCart(cartId);
-    return getCart(storeId, tableNo);
+  public CartPricing getPricing(String storeId, String tableNo) {
+    return promotionService.price(cartStore.get(storeId, tableNo));
   }
 
-  @Transactional
-  public TableCart updateQty(String storeId, String tableNo, String dishId, String optionSignature, int qty) {
-    Long cartId = getOrCreateCartId(storeId, tableNo);
-    String signature = optionSignature == null ? "" : optionSignature;
-    List<Long> ids = jdbcTemplate.query(
-        "SELECT id FROM cart_items WHERE cart_id=? AND dish_id=? AND option_signature=?",
-        new Object[] { cartId, dishId, signature },
-        (rs, rowNum) -> rs.getLong("id"));
-    if (ids.isEmpty()) {
-      return getCart(storeId, tableNo);
-    }
-    long itemId = ids.get(0);
-    if (qty <= 0) {
-      jdbcTemplate.update("DELETE FROM cart_item_options WHERE cart_item_id=?", itemId);
-      jdbcTemplate.update("DELETE FROM cart_items WHERE id=?", itemId);
-    } else {
-      jdbcTemplate.update("UPDATE cart_items SET qty=? WHERE id=?", qty, itemId);
-    }
-    touchCart(cartId);
-    return getCart(storeId, tableNo);
+  public CartDelta addItem(String storeId, String tableNo, String dishId, int qty,
+                           java.util.List<SelectedOption> selectedOptions) {
+    MenuPriceIndex prices = menuService.priceIndex(storeId);
+    CartItem item = new CartItem();
+    item.dishId = dishId;
+    item.dishName = prices.dishName(dishId);
+    item.unitPrice = prices.unitPrice(dishId, selectedOptions);
+    item.qty = qty;
+    item.selectedOptions = selectedOptions;
+    item.optionSignature = buildSignature(selectedOptions);
+    return mutate(storeId, tableNo, () -> cartStore.addItem(storeId, tableNo, item));
   }
 
-  @Transactional
-  public TableCart removeItem(String storeId, String tableNo, String dishId, String optionSignature) {
-    Long cartId = getOrCreateCartId(storeId, tableNo);
-    String signature = optionSignature == null ? "" : optionSignature;
-    List<Long> ids = jdbcTemplate.query(
-        "SELECT id FROM cart_items WHERE cart_id=? AND dish_id=? AND option_signature=?",
-        new Object[] { cartId, dishId, signature },
-        (rs, rowNum) -> rs.getLong("id"));
-    for (Long id : ids) {
-      jdbcTemplate.update("DELETE FROM cart_item_options WHERE cart_item_id=?", id);
-      jdbcTemplate.update("DELETE FROM cart_items WHERE id=?", id);
-    }
-    touchCart(cartId);
-    return getCart(storeId, tableNo);
+  public CartDelta updateQty(String storeId, String tableNo, String dishId, String optionSignature, int qty) {
+    return mutate(storeId, tableNo, () -> cartStore.updateQty(storeId, tableNo, dishId, optionSignature, qty));
   }
 
-  @Transactional
-  public TableCart clear(String storeId, String tableNo) {
-    Long cartId = getOrCreateCartId(storeId, tableNo);
-    List<Long> ids = jdbcTemplate.query(
-        "SELECT id FROM cart_items WHERE cart_id=?",
-        new Object[] { cartId },
-        (rs, rowNum) -> rs.getLong("id"));
-    if (!ids.isEmpty()) {
-      String in = ids.stream().map(id -> "?").collect(Collectors.joining(","));
-      jdbcTemplate.update("DELETE FROM cart_item_options WHERE cart_item_id IN (" + in + ")", ids.toArray());
-      jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id=?", cartId);
-    }
-    touchCart(cartId);
-    return getCart(storeId, tableNo);
+  public CartDelta removeItem(String storeId, String tableNo, String dishId, String optionSignature) {
+    return mutate(storeId, tableNo, () -> cartStore.removeItem(storeId, tableNo, dishId, optionSignature));
   }
 
-  private List<CartItem> loadItems(Long cartId) {
-    List<CartItem> items = jdbcTemplate.query(
-        "SELECT * FROM cart_items WHERE cart_id=?",
-        new Object[] { cartId },
-        (rs, rowNum) -> {
-          CartItem item = new CartItem();
-          item.id = rs.getLong("id");
-          item.dishId = rs.getString("dish_id");
-          item.dishName = rs.getString("dish_name");
-          item.unitPrice = rs.getBigDecimal("unit_price");
-          item.qty = rs.getInt("qty");
-          item.optionSignature = rs.getString("option_signature");
-          item.selectedOptions = new ArrayList<>();
-          return item;
-        });
-
-    if (items.isEmpty()) {
-      return items;
-    }
+  public CartDelta clear(String storeId, String tableNo) {
+    return mutate(storeId, tableNo, () -> cartStore.clear(storeId, tableNo));
+  }
 
-    Map<Long, CartItem> map = new HashMap<>();
-    for (CartItem item : items) {
-      map.put(item.id, item);
+  @Transactional
+  public Order checkout(CartCheckoutRequest request, String idempotencyKey) {
+    CreateOrderRequest header = new CreateOrderRequest();
+    header.storeId = request.storeId;
+    header.tableNo = request.tableNo;
+    header.peopleCount = request.peopleCount;
+    header.remark = request.remark;
+    header.clientId = request.clientId;
+
+    Order order;
+    if (cartStore == jdbcCartStore) {
+      Order draft = orderService.prepareOrder(header);
+      draft.idempotencyKey = idempotencyKey;
+      MenuPriceIndex prices = menuService.priceIndex(request.storeId);
+      long version = jdbcCartStore.checkout(draft, cart -> checkPrices(prices, cart.items),
+          cart -> promotionService.price(cart).discount);
+      if (version == 0) {
+        throw new IllegalArgumentException("Cart is empty");
+      }
+      publish(cleared(request.storeId, request.tableNo, version));
+      tableService.setStatus(request.storeId, request.tableNo, TableStatus.DINING);
+      order = orderService.getOrder(draft.orderId);
+      prepBoard.ordersOpened(List.of(order));
+    } else {
+      // take the lines out atomically: diners can keep adding while this runs, and a concurrent checkout of the
+      // same table gets an empty cart instead of ordering the same lines twice
+      TableCart cart = cartStore.take(request.storeId, request.tableNo);
+      if (cart.items.isEmpty()) {
+        throw new IllegalArgumentException("Cart is empty");
+      }
+      MenuPriceIndex prices = menuService.priceIndex(request.storeId);
+      // the cart lives outside the database transaction, so hand the lines back if the order does not commit
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          if (status != STATUS_COMMITTED) {
+            restore(cart);
+          }
+        }
+      });
+      checkPrices(prices, cart.items);
+      for (CartItem line : cart.items) {
+        OrderItem item = new OrderItem();
+        item.dishId = line.dishId;
+        item.dishName = line.dishName;
+        item.qty = line.qty;
+        item.selectedOptions = line.selectedOptions;
+        header.items.add(item);
+      }
+      order = orderService.prepareOrder(header);
+      order.idempotencyKey = idempotencyKey;
+      order.discountAmount = promotionService.price(cart).discount;
+      order.totalAmount = order.totalAmount.minus(order.discountAmount);
+      orderService.insertOrders(List.of(order));
+      publish(cleared(request.storeId, request.tableNo, cart.version));
     }
+    outboxService.enqueue("CART_CHECKED_OUT", order, topics.staffAndTable(request.storeId, request.tableNo));
+    return order;
+  }
 
-    String in = map.keySet().stream().map(id -> "?").collect(Collectors.joining(","));
-    List<Object> args = new ArrayList<>(map.keySet());
-    jdbcTemplate.query(
-        "SELECT * FROM cart_item_options WHERE cart_item_id IN (" + in + ")",
-        args.toArray(),
-        (rs, rowNum) -> {
-          long itemId = rs.getLong("cart_item_id");
-          CartItem item = map.get(itemId);
-          if (item != null) {
-            SelectedOption option = new SelectedOption();
-            option.groupId = rs.getString("group_id");
-            option.groupName = rs.getString("group_name");
-            option.optionId = rs.getString("option_id");
-            option.optionName = rs.getString("option_name");
-            option.extraPrice = rs.getBigDecimal("extra_price");
-            item.selectedOptions.add(option);
-          }
-          return null;
-        });
+  private CartDelta mutate(String storeId, String tableNo, Supplier<CartDelta> change) {
+    if (cartStore != jdbcCartStore) {
+      // the Redis store applies each change atomically in a Lua script
+      return publish(change.get());
+    }
+    // hold the table lock until after commit so the next writer sees this change
+    return cartLocks.withLock(storeId, tableNo, () -> transactionTemplate.execute(status -> publish(change.get())));
+  }
 
-    return items;
+  private CartDelta cleared(String storeId, String tableNo, long version) {
+    CartDelta delta = new CartDelta(storeId, tableNo, version);
+    delta.cleared = true;
+    return delta;
   }
 
-  private Long getOrCreateCartId(String storeId, String tableNo) {
-    List<Long> ids = jdbcTemplate.query(
-        "SELECT id FROM carts WHERE store_id=? AND table_no=?",
-        new Object[] { storeId, tableNo },
-        (rs, rowNum) -> rs.getLong("id"));
-    if (!ids.isEmpty()) {
-      return ids.get(0);
+  // a line whose dish or options left the menu, or whose price changed since it was added, fails the checkout
+  private void checkPrices(MenuPriceIndex prices, List<CartItem> items) {
+    for (CartItem line : items) {
+      Money current = prices.unitPrice(line.dishId, line.selectedOptions);
+      if (!current.equals(line.unitPrice)) {
+        throw new IllegalArgumentException("Price changed for " + line.dishName + ", please review the cart");
+      }
     }
-    KeyHolder keyHolder = new GeneratedKeyHolder();
-    jdbcTemplate.update(connection -> {
-      PreparedStatement ps = connection.prepareStatement(
-          "INSERT INTO carts (store_id, table_no, updated_at) VALUES (?, ?, ?)",
-          Statement.RETURN_GENERATED_KEYS);
-      ps.setString(1, storeId);
-      ps.setString(2, tableNo);
-      ps.setTimestamp(3, Timestamp.from(Instant.now()));
-      return ps;
-    }, keyHolder);
-    Number key = keyHolder.getKey();
-    return key == null ? 0L : key.longValue();
   }
 
-  private long insertCartItem(Long cartId, String dishId, String dishName, BigDecimal unitPrice, int qty, String signature) {
-    KeyHolder keyHolder = new GeneratedKeyHolder();
-    jdbcTemplate.update(connection -> {
-      PreparedStatement ps = connection.prepareStatement(
-          "INSERT INTO cart_items (cart_id, dish_id, dish_name, qty, unit_price, option_signature) VALUES (?, ?, ?, ?, ?, ?)",
-          Statement.RETURN_GENERATED_KEYS);
-      ps.setLong(1, cartId);
-      ps.setString(2, dishId);
-      ps.setString(3, dishName);
-      ps.setInt(4, qty);
-      ps.setBigDecimal(5, unitPrice == null ? BigDecimal.ZERO : unitPrice);
-      ps.setString(6, signature);
-      return ps;
-    }, keyHolder);
-    Number key = keyHolder.getKey();
-    return key == null ? 0L : key.longValue();
+  private void restore(TableCart cart) {
+    for (CartItem line : cart.items) {
+      try {
+        cartEvents.submit(cartStore.addItem(cart.storeId, cart.tableNo, line));
+      } catch (RuntimeException ex) {
+        log.warn("Unable to restore cart line after failed checkout: store={} table={} dish={}",
+            cart.storeId, cart.tableNo, line.dishId, ex);
+      }
+    }
   }
 
-  private void touchCart(Long cartId) {
-    jdbcTemplate.update("UPDATE carts SET updated_at=? WHERE id=?", Timestamp.from(Instant.now()), cartId);
+  private CartDelta publish(CartDelta delta) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      cartEvents.submit(delta);
+      return delta;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        cartEvents.submit(delta);
+      }
+    });
+    return delta;
   }
 
   private String buildSignature(java.util.List<SelectedOption> selectedOptions) {
@@ -0,0 +1,14 @@
+package com.smartorder.service;
+
+import com.smartorder.model.CartDelta;
+import com.smartorder.model.CartItem;
+import com.smartorder.model.TableCart;
+
+public interface CartStore {
+  TableCart get(String storeId, String tableNo);
+  CartDelta addItem(String storeId, String tableNo, CartItem item);
+  CartDelta updateQty(String storeId, String tableNo, String dishId, String optionSignature, int qty);
+  CartDelta removeItem(String storeId, String tableNo, String dishId, String optionSignature);
+  CartDelta clear(String storeId, String tableNo);
+  TableCart take(String storeId, String tableNo);
+}
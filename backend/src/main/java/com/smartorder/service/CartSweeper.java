@@ -0,0 +1,119 @@
+package com.smartorder.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Component
+public class CartSweeper {
+  private static final Logger log = LoggerFactory.getLogger(CartSweeper.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final Duration idle;
+  private final int batchSize;
+  private final int maxBatches;
+  private final long pauseMs;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "cart-sweeper");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final Counter purgedCarts;
+  private final Counter purgedLines;
+
+  public CartSweeper(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, MeterRegistry registry,
+                     @Value("${app.cart.gc.idle-hours:24}") long idleHours,
+                     @Value("${app.cart.gc.batch-size:200}") int batchSize,
+                     @Value("${app.cart.gc.max-batches:500}") int maxBatches,
+                     @Value("${app.cart.gc.pause-ms:50}") long pauseMs) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+    this.idle = Duration.ofHours(idleHours);
+    this.batchSize = batchSize;
+    this.maxBatches = maxBatches;
+    this.pauseMs = pauseMs;
+    this.purgedCarts = Counter.builder("cart.gc.purged").tag("table", "carts").register(registry);
+    this.purgedLines = Counter.builder("cart.gc.purged").tag("table", "cart_items").register(registry);
+  }
+
+  @Scheduled(cron = "${app.cart.gc.cron:0 7 * * * *}")
+  public void schedule() {
+    // run off the scheduler thread so the pauses between batches don't hold up other jobs
+    if (running.compareAndSet(false, true)) {
+      executor.execute(this::sweep);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private void sweep() {
+    long started = System.currentTimeMillis();
+    Timestamp cutoff = Timestamp.from(Instant.now().minus(idle));
+    int carts = 0;
+    int lines = 0;
+    try {
+      for (int batch = 0; batch < maxBatches; batch++) {
+        int[] purged = transactionTemplate.execute(status -> sweepBatch(cutoff));
+        if (purged == null || purged[0] == 0) {
+          break;
+        }
+        carts += purged[0];
+        lines += purged[1];
+        if (purged[0] < batchSize) {
+          break;
+        }
+        Thread.sleep(pauseMs);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (Exception ex) {
+      log.warn("Cart sweep failed", ex);
+    } finally {
+      running.set(false);
+    }
+    purgedCarts.increment(carts);
+    purgedLines.increment(lines);
+    if (carts > 0) {
+      log.info("Cart sweep: carts={} lines={} cutoff={} tookMs={}", carts, lines, cutoff,
+          System.currentTimeMillis() - started);
+    }
+  }
+
+  private int[] sweepBatch(Timestamp cutoff) {
+    // carts being mutated right now hold their row lock and are skipped
+    List<Long> ids = jdbcTemplate.queryForList(
+        "SELECT id FROM carts WHERE updated_at < ? ORDER BY updated_at LIMIT ? FOR UPDATE SKIP LOCKED",
+        Long.class, cutoff, batchSize);
+    if (ids.isEmpty()) {
+      return new int[] {0, 0};
+    }
+    String in = ids.stream().map(id -> "?").collect(Collectors.joining(","));
+    Object[] args = ids.toArray();
+    jdbcTemplate.update(
+        "DELETE o FROM cart_item_options o JOIN cart_items i ON i.id = o.cart_item_id WHERE i.cart_id IN (" + in + ")",
+        args);
+    int lines = jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id IN (" + in + ")", args);
+    int carts = jdbcTemplate.update("DELETE FROM carts WHERE id IN (" + in + ")", args);
+    return new int[] {carts, lines};
+  }
+}
@@ -0,0 +1,372 @@
+package com.smartorder.service;
+
+import com.smartorder.model.CartDelta;
+import com.smartorder.model.CartItem;
+import com.smartorder.model.Money;
+import com.smartorder.model.Order;
+import com.smartorder.model.OrderStatus;
+import com.smartorder.model.PaymentStatus;
+import com.smartorder.model.SelectedOption;
+import com.smartorder.model.TableCart;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public class JdbcCartStore implements CartStore {
+  private final JdbcTemplate jdbcTemplate;
+  private final OptionCodec optionCodec;
+
+  public JdbcCartStore(JdbcTemplate jdbcTemplate, OptionCodec optionCodec) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.optionCodec = optionCodec;
+  }
+
+  @Override
+  public TableCart get(String storeId, String tableNo) {
+    CartRow row = getOrCreateCart(storeId, tableNo);
+    TableCart cart = new TableCart();
+    cart.storeId = storeId;
+    cart.tableNo = tableNo;
+    cart.version = row.version;
+    cart.items = loadItems(row.id);
+    return cart;
+  }
+
+  @Override
+  public CartDelta addItem(String storeId, String tableNo, CartItem item) {
+    Long cartId = upsertCartId(storeId, tableNo);
+    CartItem line = copyLine(item);
+    LineWrite write = upsertLine(cartId, item);
+    line.id = write.id;
+    if (!write.inserted) {
+      line.qty = jdbcTemplate.queryForObject("SELECT qty FROM cart_items WHERE id=?", Integer.class, write.id);
+    }
+    CartDelta delta = new CartDelta(storeId, tableNo, bumpVersion(cartId));
+    delta.items.add(line);
+    return delta;
+  }
+
+  @Override
+  public CartDelta updateQty(String storeId, String tableNo, String dishId, String optionSignature, int qty) {
+    Long cartId = upsertCartId(storeId, tableNo);
+    String signature = optionSignature == null ? "" : optionSignature;
+    List<CartItem> items = jdbcTemplate.query(
+        "SELECT * FROM cart_items WHERE cart_id=? AND dish_id=? AND option_signature=?",
+        new Object[] { cartId, dishId, signature },
+        (rs, rowNum) -> {
+          CartItem line = new CartItem();
+          line.id = rs.getLong("id");
+          line.dishId = rs.getString("dish_id");
+          line.dishName = rs.getString("dish_name");
+          line.unitPrice = Money.of(rs.getBigDecimal("unit_price"));
+          line.optionSignature = rs.getString("option_signature");
+          line.selectedOptions = null;
+          return line;
+        });
+    CartItem line = items.isEmpty() ? removedLine(dishId, signature) : items.get(0);
+    if (items.isEmpty() || qty <= 0) {
+      line.qty = 0;
+      if (line.id != null) {
+        jdbcTemplate.update("DELETE FROM cart_item_options WHERE cart_item_id=?", line.id);
+        jdbcTemplate.update("DELETE FROM cart_items WHERE id=?", line.id);
+      }
+    } else {
+      line.qty = qty;
+      jdbcTemplate.update("UPDATE cart_items SET qty=? WHERE id=?", qty, line.id);
+    }
+    CartDelta delta = new CartDelta(storeId, tableNo, bumpVersion(cartId));
+    delta.items.add(line);
+    return delta;
+  }
+
+  @Override
+  public CartDelta removeItem(String storeId, String tableNo, String dishId, String optionSignature) {
+    Long cartId = upsertCartId(storeId, tableNo);
+    for (Long id : findLineIds(cartId, dishId, optionSignature)) {
+      jdbcTemplate.update("DELETE FROM cart_item_options WHERE cart_item_id=?", id);
+      jdbcTemplate.update("DELETE FROM cart_items WHERE id=?", id);
+    }
+    CartDelta delta = new CartDelta(storeId, tableNo, bumpVersion(cartId));
+    delta.items.add(removedLine(dishId, optionSignature == null ? "" : optionSignature));
+    return delta;
+  }
+
+  @Override
+  public CartDelta clear(String storeId, String tableNo) {
+    Long cartId = upsertCartId(storeId, tableNo);
+    deleteLines(cartId);
+    CartDelta delta = new CartDelta(storeId, tableNo, bumpVersion(cartId));
+    delta.cleared = true;
+    return delta;
+  }
+
+  @Override
+  public TableCart take(String storeId, String tableNo) {
+    Long cartId = upsertCartId(storeId, tableNo);
+    jdbcTemplate.query("SELECT id FROM carts WHERE id=? FOR UPDATE", (rs, rowNum) -> null, cartId);
+    TableCart cart = new TableCart();
+    cart.storeId = storeId;
+    cart.tableNo = tableNo;
+    cart.items = loadItems(cartId);
+    if (!cart.items.isEmpty()) {
+      deleteLines(cartId);
+      cart.version = bumpVersion(cartId);
+    }
+    return cart;
+  }
+
+  @Transactional
+  public void replace(String storeId, String tableNo, List<CartItem> items) {
+    Long cartId = upsertCartId(storeId, tableNo);
+    deleteLines(cartId);
+    for (CartItem item : items) {
+      upsertLine(cartId, item);
+    }
+    bumpVersion(cartId);
+  }
+
+  public long checkout(Order order, Consumer<TableCart> validate, Function<TableCart, Money> discount) {
+    List<Long> cartIds = jdbcTemplate.query(
+        "SELECT id FROM carts WHERE store_id=? AND table_no=? FOR UPDATE",
+        (rs, rowNum) -> rs.getLong("id"),
+        order.storeId, order.tableNo);
+    if (cartIds.isEmpty()) {
+      return 0L;
+    }
+    long cartId = cartIds.get(0);
+
+    TableCart cart = new TableCart();
+    cart.storeId = order.storeId;
+    cart.tableNo = order.tableNo;
+    cart.items = loadItems(cartId);
+    if (cart.items.isEmpty()) {
+      return 0L;
+    }
+    // the order total is summed from the stored line prices, so they must still match the menu
+    validate.accept(cart);
+    order.discountAmount = discount.apply(cart);
+    int created = jdbcTemplate.update(
+        "INSERT INTO orders (id, store_id, table_no, client_id, idempotency_key, status, payment_status, people_count, remark, "
+            + "total_amount, discount_amount, created_at, updated_at) "
+            + "SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, SUM(qty * unit_price) - ?, ?, ?, ? FROM cart_items WHERE cart_id=? HAVING COUNT(*) > 0",
+        order.orderId, order.storeId, order.tableNo, order.clientId, order.idempotencyKey,
+        OrderStatus.NEW.name(), PaymentStatus.UNPAID.name(), order.peopleCount, order.remark,
+        order.discountAmount.toDecimal(), order.discountAmount.toDecimal(),
+        Timestamp.from(order.createdAt), Timestamp.from(order.updatedAt), cartId);
+    if (created == 0) {
+      return 0L;
+    }
+    jdbcTemplate.update(
+        "INSERT INTO order_items (order_id, cart_item_id, dish_id, dish_name, qty, unit_price, line_total, options_json) "
+            + "SELECT ?, id, dish_id, dish_name, qty, unit_price, qty * unit_price, options_json FROM cart_items WHERE cart_id=? ORDER BY id",
+        order.orderId, cartId);
+    jdbcTemplate.update(
+        "INSERT INTO order_item_options (order_item_id, group_id, group_name, option_id, option_name, extra_price) "
+            + "SELECT oi.id, o.group_id, o.group_name, o.option_id, o.option_name, o.extra_price "
+            + "FROM order_items oi JOIN cart_item_options o ON o.cart_item_id = oi.cart_item_id WHERE oi.order_id=?",
+        order.orderId);
+    deleteLines(cartId);
+    return bumpVersion(cartId);
+  }
+
+  private List<Long> findLineIds(Long cartId, String dishId, String optionSignature) {
+    return jdbcTemplate.query(
+        "SELECT id FROM cart_items WHERE cart_id=? AND dish_id=? AND option_signature=?",
+        new Object[] { cartId, dishId, optionSignature == null ? "" : optionSignature },
+        (rs, rowNum) -> rs.getLong("id"));
+  }
+
+  private void deleteLines(Long cartId) {
+    jdbcTemplate.update(
+        "DELETE o FROM cart_item_options o JOIN cart_items i ON i.id = o.cart_item_id WHERE i.cart_id=?", cartId);
+    jdbcTemplate.update("DELETE FROM cart_items WHERE cart_id=?", cartId);
+  }
+
+  private LineWrite upsertLine(Long cartId, CartItem item) {
+    KeyHolder keyHolder = new GeneratedKeyHolder();
+    int affected = jdbcTemplate.update(connection -> {
+      PreparedStatement ps = connection.prepareStatement(
+          "INSERT INTO cart_items (cart_id, dish_id, dish_name, qty, unit_price, option_signature, options_json) "
+              + "VALUES (?, ?, ?, ?, ?, ?, ?) "
+              + "ON DUPLICATE KEY UPDATE qty=qty+VALUES(qty), id=LAST_INSERT_ID(id)",
+          Statement.RETURN_GENERATED_KEYS);
+      ps.setLong(1, cartId);
+      ps.setString(2, item.dishId);
+      ps.setString(3, item.dishName);
+      ps.setInt(4, item.qty);
+      ps.setBigDecimal(5, (item.unitPrice == null ? Money.ZERO : item.unitPrice).toDecimal());
+      ps.setString(6, item.optionSignature == null ? "" : item.optionSignature);
+      ps.setString(7, optionCodec.encode(item.selectedOptions));
+      return ps;
+    }, keyHolder);
+    // MySQL reports 1 for a fresh row and 2 for a duplicate-key update; the driver may then list two keys, the first is ours
+    LineWrite write = new LineWrite(firstKey(keyHolder), affected == 1);
+    if (write.inserted && item.selectedOptions != null && !item.selectedOptions.isEmpty() && optionCodec.writeRows()) {
+      List<Object[]> args = new ArrayList<>();
+      for (SelectedOption option : item.selectedOptions) {
+        args.add(new Object[] {
+            write.id,
+            option.groupId,
+            option.groupName,
+            option.optionId,
+            option.optionName,
+            (option.extraPrice == null ? Money.ZERO : option.extraPrice).toDecimal()
+        });
+      }
+      jdbcTemplate.batchUpdate(
+          "INSERT INTO cart_item_options (cart_item_id, group_id, group_name, option_id, option_name, extra_price) "
+              + "VALUES (?, ?, ?, ?, ?, ?)",
+          args);
+    }
+    return write;
+  }
+
+  private CartItem copyLine(CartItem item) {
+    CartItem line = new CartItem();
+    line.dishId = item.dishId;
+    line.dishName = item.dishName;
+    line.unitPrice = item.unitPrice == null ? Money.ZERO : item.unitPrice;
+    line.qty = item.qty;
+    line.optionSignature = item.optionSignature;
+    line.selectedOptions = item.selectedOptions == null ? new ArrayList<>() : item.selectedOptions;
+    return line;
+  }
+
+  private CartItem removedLine(String dishId, String optionSignature) {
+    CartItem line = new CartItem();
+    line.dishId = dishId;
+    line.optionSignature = optionSignature;
+    line.qty = 0;
+    line.selectedOptions = null;
+    return line;
+  }
+
+  private List<CartItem> loadItems(Long cartId) {
+    List<CartItem> items = jdbcTemplate.query(
+        "SELECT * FROM cart_items WHERE cart_id=? ORDER BY id",
+        new Object[] { cartId },
+        (rs, rowNum) -> {
+          CartItem item = new CartItem();
+          item.id = rs.getLong("id");
+          item.dishId = rs.getString("dish_id");
+          item.dishName = rs.getString("dish_name");
+          item.unitPrice = Money.of(rs.getBigDecimal("unit_price"));
+          item.qty = rs.getInt("qty");
+          item.optionSignature = rs.getString("option_signature");
+          String options = rs.getString("options_json");
+          item.selectedOptions = options == null ? null : optionCodec.decode(options);
+          return item;
+        });
+
+    // lines added before options_json existed still keep their options in cart_item_options
+    Map<Long, CartItem> map = new HashMap<>();
+    for (CartItem item : items) {
+      if (item.selectedOptions == null) {
+        item.selectedOptions = new ArrayList<>();
+        map.put(item.id, item);
+      }
+    }
+    if (map.isEmpty()) {
+      return items;
+    }
+
+    String in = map.keySet().stream().map(id -> "?").collect(Collectors.joining(","));
+    List<Object> args = new ArrayList<>(map.keySet());
+    jdbcTemplate.query(
+        "SELECT * FROM cart_item_options WHERE cart_item_id IN (" + in + ")",
+        args.toArray(),
+        (rs, rowNum) -> {
+          long itemId = rs.getLong("cart_item_id");
+          CartItem item = map.get(itemId);
+          if (item != null) {
+            SelectedOption option = new SelectedOption();
+            option.groupId = rs.getString("group_id");
+            option.groupName = rs.getString("group_name");
+            option.optionId = rs.getString("option_id");
+            option.optionName = rs.getString("option_name");
+            option.extraPrice = Money.of(rs.getBigDecimal("extra_price"));
+            item.selectedOptions.add(option);
+          }
+          return null;
+        });
+
+    return items;
+  }
+
+  private CartRow getOrCreateCart(String storeId, String tableNo) {
+    List<CartRow> rows = findCart(storeId, tableNo);
+    if (!rows.isEmpty()) {
+      return rows.get(0);
+    }
+    upsertCartId(storeId, tableNo);
+    return findCart(storeId, tableNo).get(0);
+  }
+
+  private List<CartRow> findCart(String storeId, String tableNo) {
+    return jdbcTemplate.query(
+        "SELECT id, version FROM carts WHERE store_id=? AND table_no=?",
+        new Object[] { storeId, tableNo },
+        (rs, rowNum) -> new CartRow(rs.getLong("id"), rs.getLong("version")));
+  }
+
+  private long upsertCartId(String storeId, String tableNo) {
+    KeyHolder keyHolder = new GeneratedKeyHolder();
+    jdbcTemplate.update(connection -> {
+      PreparedStatement ps = connection.prepareStatement(
+          "INSERT INTO carts (store_id, table_no, updated_at) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE id=LAST_INSERT_ID(id)",
+          Statement.RETURN_GENERATED_KEYS);
+      ps.setString(1, storeId);
+      ps.setString(2, tableNo);
+      ps.setTimestamp(3, Timestamp.from(Instant.now()));
+      return ps;
+    }, keyHolder);
+    return firstKey(keyHolder);
+  }
+
+  private long firstKey(KeyHolder keyHolder) {
+    List<Map<String, Object>> keys = keyHolder.getKeyList();
+    if (keys.isEmpty() || keys.get(0).isEmpty()) return 0L;
+    Object value = keys.get(0).values().iterator().next();
+    return value instanceof Number number ? number.longValue() : 0L;
+  }
+
+  private long bumpVersion(Long cartId) {
+    jdbcTemplate.update("UPDATE carts SET version=version+1, updated_at=? WHERE id=?", Timestamp.from(Instant.now()), cartId);
+    Long version = jdbcTemplate.queryForObject("SELECT version FROM carts WHERE id=?", Long.class, cartId);
+    return version == null ? 0L : version;
+  }
+
+  private static class LineWrite {
+    final long id;
+    final boolean inserted;
+
+    LineWrite(long id, boolean inserted) {
+      this.id = id;
+      this.inserted = inserted;
+    }
+  }
+
+  private static class CartRow {
+    final long id;
+    final long version;
+
+    CartRow(long id, long version) {
+      this.id = id;
+      this.version = version;
+    }
+  }
+}
@@ -0,0 +1,301 @@
+package com.smartorder.service;
+
+import com.smartorder.model.Dish;
+import com.smartorder.model.LiteCategory;
+import com.smartorder.model.Menu;
+import com.smartorder.model.MenuCategory;
+import com.smartorder.model.MenuPatch;
+import com.smartorder.model.Money;
+import com.smartorder.model.OptionGroup;
+import com.smartorder.model.OptionItem;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+// Matches an incoming menu against the stored one (by id, else by normalized name) and keeps only the rows that change.
+// Fields the incoming dish leaves null keep their stored value, and option groups are only rewritten when sent and
+// different, so re-parsing a menu keeps dish ids, images and options.
+public class MenuDiff {
+  final List<MenuCategory> insertedCategories = new ArrayList<>();
+  final List<MenuCategory> renamedCategories = new ArrayList<>();
+  final List<String> removedCategoryIds = new ArrayList<>();
+  final List<Dish> insertedDishes = new ArrayList<>();
+  final List<Dish> updatedDishes = new ArrayList<>();
+  final List<String> removedDishIds = new ArrayList<>();
+  final Map<String, List<OptionGroup>> optionGroups = new LinkedHashMap<>();
+  final List<String> clearedOptionDishIds = new ArrayList<>();
+  private final Map<String, LiteCategory> touchedCategories = new LinkedHashMap<>();
+  private int rowsWritten;
+  private int naiveRows;
+
+  private MenuDiff() {
+  }
+
+  public static MenuDiff compute(Menu existing, List<MenuCategory> incoming) {
+    MenuDiff diff = new MenuDiff();
+    Map<String, MenuCategory> categoriesById = new HashMap<>();
+    Map<String, List<MenuCategory>> categoriesByName = new HashMap<>();
+    Map<String, Dish> dishesById = new HashMap<>();
+    Map<String, List<Dish>> dishesByName = new HashMap<>();
+    for (MenuCategory category : existing.categories) {
+      categoriesById.put(category.id, category);
+      categoriesByName.computeIfAbsent(normalize(category.name), key -> new ArrayList<>()).add(category);
+      diff.naiveRows++;
+      for (Dish dish : category.dishes) {
+        dishesById.put(dish.id, dish);
+        dishesByName.computeIfAbsent(normalize(dish.name), key -> new ArrayList<>()).add(dish);
+        diff.naiveRows += 1 + optionRows(dish.optionGroups);
+      }
+    }
+
+    Set<String> claimedCategories = new HashSet<>();
+    Set<String> claimedDishes = new HashSet<>();
+    for (MenuCategory category : incoming) {
+      if (category == null) continue;
+      diff.naiveRows++;
+      MenuCategory match = claim(category.id == null ? null : categoriesById.get(category.id),
+          categoriesByName.get(normalize(category.name)), claimedCategories, null);
+      String categoryId;
+      String categoryName = category.name != null || match == null ? category.name : match.name;
+      if (match == null) {
+        categoryId = category.id == null || categoriesById.containsKey(category.id)
+            ? UUID.randomUUID().toString() : category.id;
+        MenuCategory inserted = new MenuCategory();
+        inserted.id = categoryId;
+        inserted.name = category.name;
+        diff.insertedCategories.add(inserted);
+        diff.rowsWritten++;
+        diff.touch(inserted);
+      } else {
+        categoryId = match.id;
+        if (category.name != null && !category.name.equals(match.name)) {
+          MenuCategory renamed = new MenuCategory();
+          renamed.id = match.id;
+          renamed.name = category.name;
+          diff.renamedCategories.add(renamed);
+          diff.rowsWritten++;
+          diff.touch(renamed);
+        }
+      }
+      if (category.dishes == null) continue;
+      for (Dish dish : category.dishes) {
+        if (dish == null) continue;
+        diff.naiveRows += 1 + optionRows(dish.optionGroups);
+        Dish stored = claim(dish.id == null ? null : dishesById.get(dish.id),
+            dishesByName.get(normalize(dish.name)), claimedDishes, categoryId);
+        if (stored == null) {
+          diff.insertDish(categoryId, categoryName, dish, dishesById);
+        } else {
+          diff.updateDish(categoryId, categoryName, stored, dish);
+        }
+      }
+    }
+
+    for (MenuCategory category : existing.categories) {
+      for (Dish dish : category.dishes) {
+        if (!claimedDishes.contains(dish.id)) {
+          diff.removedDishIds.add(dish.id);
+          diff.clearedOptionDishIds.add(dish.id);
+          diff.rowsWritten += 1 + optionRows(dish.optionGroups);
+        }
+      }
+      if (!claimedCategories.contains(category.id)) {
+        diff.removedCategoryIds.add(category.id);
+        diff.rowsWritten++;
+      }
+    }
+    return diff;
+  }
+
+  public boolean isEmpty() {
+    return rowsWritten == 0;
+  }
+
+  public int rowsWritten() {
+    return rowsWritten;
+  }
+
+  public int naiveRows() {
+    return naiveRows;
+  }
+
+  public MenuPatch patch(String storeId, long baseVersion, long version) {
+    MenuPatch patch = new MenuPatch();
+    patch.storeId = storeId;
+    patch.baseVersion = baseVersion;
+    patch.version = version;
+    patch.categories.addAll(touchedCategories.values());
+    patch.removedCategoryIds.addAll(removedCategoryIds);
+    patch.removedDishIds.addAll(removedDishIds);
+    patch.rowsWritten = rowsWritten;
+    patch.naiveRows = naiveRows;
+    return patch;
+  }
+
+  private void insertDish(String categoryId, String categoryName, Dish dish, Map<String, Dish> dishesById) {
+    Dish inserted = copy(dish);
+    inserted.id = dish.id == null || dishesById.containsKey(dish.id) ? UUID.randomUUID().toString() : dish.id;
+    inserted.categoryId = categoryId;
+    if (inserted.price == null) {
+      inserted.price = Money.ZERO;
+    }
+    insertedDishes.add(inserted);
+    rowsWritten++;
+    if (dish.optionGroups != null && !dish.optionGroups.isEmpty()) {
+      optionGroups.put(inserted.id, dish.optionGroups);
+      rowsWritten += optionRows(dish.optionGroups);
+    }
+    touch(categoryId, categoryName, inserted);
+  }
+
+  private void updateDish(String categoryId, String categoryName, Dish stored, Dish dish) {
+    Dish merged = copy(stored);
+    merged.categoryId = categoryId;
+    if (dish.name != null) merged.name = dish.name;
+    if (dish.price != null) merged.price = dish.price;
+    if (dish.description != null) merged.description = dish.description;
+    if (dish.imageUrl != null) merged.imageUrl = dish.imageUrl;
+    if (dish.detailImageUrl != null) merged.detailImageUrl = dish.detailImageUrl;
+    if (dish.tags != null && !dish.tags.isEmpty()) merged.tags = dish.tags;
+    if (dish.spicyLevel != null) merged.spicyLevel = dish.spicyLevel;
+    if (dish.calories != null) merged.calories = dish.calories;
+    if (dish.ingredients != null) merged.ingredients = dish.ingredients;
+    if (dish.allergens != null) merged.allergens = dish.allergens;
+    boolean optionsChanged = dish.optionGroups != null && !dish.optionGroups.isEmpty()
+        && !sameOptions(stored.optionGroups, dish.optionGroups);
+    if (optionsChanged) {
+      merged.optionGroups = dish.optionGroups;
+      optionGroups.put(stored.id, dish.optionGroups);
+      clearedOptionDishIds.add(stored.id);
+      rowsWritten += optionRows(stored.optionGroups) + optionRows(dish.optionGroups);
+    }
+    boolean rowChanged = !sameRow(stored, merged);
+    if (rowChanged) {
+      updatedDishes.add(merged);
+      rowsWritten++;
+    }
+    if (rowChanged || optionsChanged) {
+      touch(categoryId, categoryName, merged);
+    }
+  }
+
+  private void touch(MenuCategory category) {
+    LiteCategory lite = touchedCategories.computeIfAbsent(category.id, id -> new LiteCategory());
+    lite.id = category.id;
+    lite.name = category.name;
+  }
+
+  private void touch(String categoryId, String categoryName, Dish dish) {
+    LiteCategory lite = touchedCategories.computeIfAbsent(categoryId, id -> new LiteCategory());
+    lite.id = categoryId;
+    lite.name = categoryName;
+    lite.dishes.add(MenuSnapshot.summary(categoryId, dish));
+  }
+
+  // prefers the id match, then an unclaimed same-name row (in the same category for dishes)
+  private static <T> T claim(T byId, List<T> byName, Set<String> claimed, String categoryId) {
+    if (byId != null && claimed.add(idOf(byId))) {
+      return byId;
+    }
+    if (byName == null) {
+      return null;
+    }
+    T fallback = null;
+    for (T candidate : byName) {
+      if (claimed.contains(idOf(candidate))) continue;
+      if (categoryId == null || categoryId.equals(((Dish) candidate).categoryId)) {
+        claimed.add(idOf(candidate));
+        return candidate;
+      }
+      if (fallback == null) {
+        fallback = candidate;
+      }
+    }
+    if (fallback != null) {
+      claimed.add(idOf(fallback));
+    }
+    return fallback;
+  }
+
+  private static String idOf(Object row) {
+    return row instanceof Dish dish ? dish.id : ((MenuCategory) row).id;
+  }
+
+  private static String normalize(String name) {
+    return name == null ? "" : name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+  }
+
+  private static boolean sameRow(Dish a, Dish b) {
+    return Objects.equals(a.categoryId, b.categoryId)
+        && Objects.equals(a.name, b.name)
+        && Objects.equals(a.price, b.price)
+        && Objects.equals(a.description, b.description)
+        && Objects.equals(a.imageUrl, b.imageUrl)
+        && Objects.equals(a.detailImageUrl, b.detailImageUrl)
+        && Objects.equals(a.tags, b.tags)
+        && Objects.equals(a.spicyLevel, b.spicyLevel)
+        && Objects.equals(a.calories, b.calories)
+        && Objects.equals(a.ingredients, b.ingredients)
+        && Objects.equals(a.allergens, b.allergens);
+  }
+
+  // option rows are read back in no particular order, so groups and items are compared as sorted sets
+  private static boolean sameOptions(List<OptionGroup> stored, List<OptionGroup> incoming) {
+    return stored != null && canonical(stored).equals(canonical(incoming));
+  }
+
+  private static List<String> canonical(List<OptionGroup> groups) {
+    List<String> keys = new ArrayList<>();
+    for (OptionGroup group : groups) {
+      List<String> items = new ArrayList<>();
+      if (group.items != null) {
+        for (OptionItem item : group.items) {
+          items.add(item.name + "\u0000" + extra(item).minor());
+        }
+      }
+      Collections.sort(items);
+      keys.add(group.name + "\u0000" + group.multiSelect + "\u0000" + String.join("\u0001", items));
+    }
+    Collections.sort(keys);
+    return keys;
+  }
+
+  private static Money extra(OptionItem item) {
+    return item.extraPrice == null ? Money.ZERO : item.extraPrice;
+  }
+
+  private static int optionRows(List<OptionGroup> groups) {
+    if (groups == null) return 0;
+    int rows = 0;
+    for (OptionGroup group : groups) {
+      rows += 1 + (group.items == null ? 0 : group.items.size());
+    }
+    return rows;
+  }
+
+  private static Dish copy(Dish dish) {
+    Dish copy = new Dish();
+    copy.id = dish.id;
+    copy.categoryId = dish.categoryId;
+    copy.name = dish.name;
+    copy.price = dish.price;
+    copy.description = dish.description;
+    copy.imageUrl = dish.imageUrl;
+    copy.detailImageUrl = dish.detailImageUrl;
+    copy.tags = dish.tags;
+    copy.spicyLevel = dish.spicyLevel;
+    copy.calories = dish.calories;
+    copy.ingredients = dish.ingredients;
+    copy.allergens = dish.allergens;
+    copy.optionGroups = dish.optionGroups;
+    return copy;
+  }
+}
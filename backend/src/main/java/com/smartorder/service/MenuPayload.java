@@ -0,0 +1,30 @@
+package com.smartorder.service;
+
+// A response body encoded once per menu version, as plain JSON and gzip. The arrays are shared and must not be mutated.
+public class MenuPayload {
+  private final byte[] json;
+  private final byte[] gzip;
+  private final long encodeNanos;
+
+  MenuPayload(byte[] json, byte[] gzip, long encodeNanos) {
+    this.json = json;
+    this.gzip = gzip;
+    this.encodeNanos = encodeNanos;
+  }
+
+  public byte[] json() {
+    return json;
+  }
+
+  public byte[] gzip() {
+    return gzip;
+  }
+
+  long encodeNanos() {
+    return encodeNanos;
+  }
+
+  long bytes() {
+    return json.length + gzip.length;
+  }
+}
@@ -0,0 +1,108 @@
+package com.smartorder.service;
+
+import com.smartorder.model.Dish;
+import com.smartorder.model.Menu;
+import com.smartorder.model.MenuCategory;
+import com.smartorder.model.Money;
+import com.smartorder.model.OptionGroup;
+import com.smartorder.model.OptionItem;
+import com.smartorder.model.SelectedOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class MenuPriceIndex {
+  private final Map<String, DishPrice> dishes = new HashMap<>();
+
+  private MenuPriceIndex() {
+  }
+
+  public static MenuPriceIndex compile(Menu menu) {
+    MenuPriceIndex index = new MenuPriceIndex();
+    for (MenuCategory category : menu.categories) {
+      for (Dish dish : category.dishes) {
+        DishPrice price = new DishPrice();
+        price.name = dish.name;
+        price.categoryId = category.id;
+        price.price = dish.price == null ? 0 : dish.price.minor();
+        for (OptionGroup group : dish.optionGroups) {
+          for (OptionItem item : group.items) {
+            OptionPrice option = new OptionPrice();
+            option.groupId = group.id;
+            option.groupName = group.name;
+            option.multiSelect = group.multiSelect;
+            option.name = item.name;
+            option.extraPrice = item.extraPrice == null ? Money.ZERO : item.extraPrice;
+            price.options.put(item.id, option);
+          }
+        }
+        index.dishes.put(dish.id, price);
+      }
+    }
+    return index;
+  }
+
+  public String dishName(String dishId) {
+    return dish(dishId).name;
+  }
+
+  public Set<String> dishIds() {
+    return dishes.keySet();
+  }
+
+  public String categoryId(String dishId) {
+    DishPrice dish = dishes.get(dishId);
+    return dish == null ? null : dish.categoryId;
+  }
+
+  // rewrites the selected options from the menu and returns the dish price plus option extras
+  public Money unitPrice(String dishId, List<SelectedOption> selectedOptions) {
+    DishPrice dish = dish(dishId);
+    long unitPrice = dish.price;
+    if (selectedOptions == null) {
+      return Money.ofMinor(unitPrice);
+    }
+    Set<String> seenOptions = new HashSet<>();
+    Set<String> singleGroups = new HashSet<>();
+    for (SelectedOption selected : selectedOptions) {
+      OptionPrice option = selected == null ? null : dish.options.get(selected.optionId);
+      if (option == null || (selected.groupId != null && !selected.groupId.equals(option.groupId))) {
+        throw new IllegalArgumentException("Unknown option for dish " + dishId);
+      }
+      if (!seenOptions.add(selected.optionId) || (!option.multiSelect && !singleGroups.add(option.groupId))) {
+        throw new IllegalArgumentException("Too many options in group " + option.groupName);
+      }
+      selected.groupId = option.groupId;
+      selected.groupName = option.groupName;
+      selected.optionName = option.name;
+      selected.extraPrice = option.extraPrice;
+      unitPrice = Math.addExact(unitPrice, option.extraPrice.minor());
+    }
+    return Money.ofMinor(unitPrice);
+  }
+
+  private DishPrice dish(String dishId) {
+    DishPrice dish = dishId == null ? null : dishes.get(dishId);
+    if (dish == null) {
+      throw new IllegalArgumentException("Unknown dish: " + dishId);
+    }
+    return dish;
+  }
+
+  private static class DishPrice {
+    String name;
+    String categoryId;
+    long price;
+    final Map<String, OptionPrice> options = new HashMap<>();
+  }
+
+  private static class OptionPrice {
+    String groupId;
+    String groupName;
+    boolean multiSelect;
+    String name;
+    Money extraPrice;
+  }
+}
@@ -1,20 +1,38 @@
 package com.smartorder.service;
 
 import com.smartorder.model.Dish;
+import com.smartorder.model.LiteMenu;
 import com.smartorder.model.Menu;
 import com.smartorder.model.MenuCategory;
+import com.smartorder.model.MenuPatch;
+import com.smartorder.model.Money;
 import com.smartorder.model.OptionGroup;
 import com.smartorder.model.OptionItem;
-import java.math.BigDecimal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,12 +40,127 @@ import org.slf4j.LoggerFactory;
 public class MenuService {
   private final JdbcTemplate jdbcTemplate;
   private static final Logger log = LoggerFactory.getLogger(MenuService.class);
+  private static final int BATCH_SIZE = 500;
+  private static final String INSERT_CATEGORY = "INSERT INTO menu_categories (id, store_id, name) VALUES (?, ?, ?)";
+  private static final String INSERT_DISH =
+      "INSERT INTO dishes (id, store_id, category_id, name, price, description, image_url, detail_image_url, tags, spicy_level, calories, ingredients, allergens) "
+          + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  private final SnapshotLru snapshots;
+  private final Map<String, CompletableFuture<MenuSnapshot>> loading = new ConcurrentHashMap<>();
+  private final long versionCheckMs;
+  private final ObjectMapper objectMapper;
+  private final Timer encodeTimer;
+  private final Counter gzipBytesSaved;
+  private final Counter notModifiedBytesSaved;
+  private final Counter encodeAvoided;
+  private final Counter diffRowsWritten;
+  private final Counter diffNaiveRows;
 
-  public MenuService(JdbcTemplate jdbcTemplate) {
+  public MenuService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, MeterRegistry registry,
+                     @Value("${app.menu.cache.max-stores:500}") int maxStores,
+                     @Value("${app.menu.cache.max-bytes:67108864}") long maxBytes,
+                     @Value("${app.menu.cache.version-check-ms:1000}") long versionCheckMs) {
     this.jdbcTemplate = jdbcTemplate;
+    this.objectMapper = objectMapper;
+    this.snapshots = new SnapshotLru(maxStores, maxBytes);
+    this.versionCheckMs = versionCheckMs;
+    this.encodeTimer = Timer.builder("menu.payload.encode").register(registry);
+    this.gzipBytesSaved = Counter.builder("menu.payload.bytes.saved").baseUnit("bytes").tag("reason", "gzip").register(registry);
+    this.notModifiedBytesSaved = Counter.builder("menu.payload.bytes.saved").baseUnit("bytes").tag("reason", "not_modified")
+        .register(registry);
+    this.encodeAvoided = Counter.builder("menu.payload.encode.avoided").baseUnit("seconds").register(registry);
+    this.diffRowsWritten = Counter.builder("menu.replace.rows").tag("mode", "diff").register(registry);
+    this.diffNaiveRows = Counter.builder("menu.replace.rows").tag("mode", "naive").register(registry);
+  }
+
+  public MenuPriceIndex priceIndex(String storeId) {
+    return snapshot(storeId).prices();
   }
 
   public Menu getMenu(String storeId) {
+    return snapshot(storeId).menu();
+  }
+
+  public MenuSnapshot snapshot(String storeId) {
+    MenuSnapshot cached = snapshots.get(storeId);
+    if (cached != null) {
+      long now = System.currentTimeMillis();
+      // local writes evict right away; the version check picks up writes made by other instances
+      if (now - cached.checkedAt < versionCheckMs) {
+        return cached;
+      }
+      if (menuVersion(storeId) == cached.version()) {
+        cached.checkedAt = now;
+        return cached;
+      }
+    }
+    return load(storeId);
+  }
+
+  private MenuSnapshot load(String storeId) {
+    CompletableFuture<MenuSnapshot> created = new CompletableFuture<>();
+    CompletableFuture<MenuSnapshot> pending = loading.putIfAbsent(storeId, created);
+    if (pending != null) {
+      try {
+        return pending.join();
+      } catch (CompletionException ex) {
+        throw ex.getCause() instanceof RuntimeException cause ? cause : ex;
+      }
+    }
+    try {
+      // version first: rows committed after it only make the snapshot newer than its label, never older
+      long version = menuVersion(storeId);
+      Menu menu = readMenu(storeId);
+      LiteMenu lite = MenuSnapshot.lite(menu);
+      MenuSnapshot snapshot = new MenuSnapshot(storeId, version, menu, lite, encode(menu), encode(lite),
+          System.currentTimeMillis());
+      // a write evicted while we were reading drops the entry, and then the result is not cached
+      if (loading.remove(storeId, created)) {
+        snapshots.put(storeId, snapshot);
+      }
+      created.complete(snapshot);
+      return snapshot;
+    } catch (RuntimeException ex) {
+      loading.remove(storeId, created);
+      created.completeExceptionally(ex);
+      throw ex;
+    }
+  }
+
+  private MenuPayload encode(Object body) {
+    long started = System.nanoTime();
+    byte[] json;
+    ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+    try {
+      json = objectMapper.writeValueAsBytes(body);
+      try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+        out.write(json);
+      }
+    } catch (IOException ex) {
+      throw new IllegalStateException("Failed to encode menu", ex);
+    }
+    long nanos = System.nanoTime() - started;
+    encodeTimer.record(nanos, TimeUnit.NANOSECONDS);
+    return new MenuPayload(json, gzip.toByteArray(), nanos);
+  }
+
+  // every response served from the snapshot skips one encode; 304s also skip the body
+  public void recordServed(MenuPayload payload, boolean gzip, boolean notModified) {
+    encodeAvoided.increment(payload.encodeNanos() / 1e9);
+    if (notModified) {
+      notModifiedBytesSaved.increment(gzip ? payload.gzip().length : payload.json().length);
+    } else if (gzip) {
+      gzipBytesSaved.increment(payload.json().length - payload.gzip().length);
+    }
+  }
+
+  private long menuVersion(String storeId) {
+    List<Long> versions = jdbcTemplate.queryForList(
+        "SELECT version FROM menu_versions WHERE store_id=?", Long.class, storeId);
+    return versions.isEmpty() ? 0 : versions.get(0);
+  }
+
+  private Menu readMenu(String storeId) {
     Menu menu = new Menu();
     menu.storeId = storeId;
 
@@ -56,7 +189,7 @@ public class MenuService {
           Dish dish = new Dish();
           dish.id = rs.getString("id");
           dish.name = rs.getString("name");
-          dish.price = rs.getBigDecimal("price");
+          dish.price = Money.of(rs.getBigDecimal("price"));
           dish.description = rs.getString("description");
           dish.imageUrl = rs.getString("image_url");
           dish.detailImageUrl = rs.getString("detail_image_url");
@@ -122,7 +255,7 @@ public class MenuService {
               OptionItem item = new OptionItem();
               item.id = rs.getString("id");
               item.name = rs.getString("name");
-              item.extraPrice = rs.getBigDecimal("extra_price");
+              item.extraPrice = Money.of(rs.getBigDecimal("extra_price"));
               String groupId = rs.getString("group_id");
               OptionGroup group = groupMap.get(groupId);
               if (group != null) {
@@ -148,7 +281,7 @@ public class MenuService {
           Dish dish = new Dish();
           dish.id = rs.getString("id");
           dish.name = rs.getString("name");
-          dish.price = rs.getBigDecimal("price");
+          dish.price = Money.of(rs.getBigDecimal("price"));
           dish.description = rs.getString("description");
           dish.imageUrl = rs.getString("image_url");
           dish.detailImageUrl = rs.getString("detail_image_url");
@@ -170,6 +303,7 @@ public class MenuService {
     if (dish == null) {
       return null;
     }
+    menuChanged(storeId);
     if (update.name != null) dish.name = update.name;
     if (update.description != null) dish.description = update.description;
     if (update.imageUrl != null) dish.imageUrl = update.imageUrl;
@@ -202,35 +336,21 @@ public class MenuService {
     return dish;
   }
 
+  @Transactional
   public MenuCategory addCategory(String storeId, String name) {
+    menuChanged(storeId);
     MenuCategory category = new MenuCategory();
     category.id = UUID.randomUUID().toString();
     category.name = name;
-    jdbcTemplate.update(
-        "INSERT INTO menu_categories (id, store_id, name) VALUES (?, ?, ?)",
-        category.id, storeId, category.name);
+    jdbcTemplate.update(INSERT_CATEGORY, category.id, storeId, category.name);
     return category;
   }
 
   @Transactional
   public Dish addDish(String storeId, String categoryId, Dish dish) {
     dish.id = UUID.randomUUID().toString();
-    jdbcTemplate.update(
-        "INSERT INTO dishes (id, store_id, category_id, name, price, description, image_url, detail_image_url, tags, spicy_level, calories, ingredients, allergens) "
-            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-        dish.id,
-        storeId,
-        categoryId,
-        dish.name,
-        dish.price == null ? BigDecimal.ZERO : dish.price,
-        dish.description,
-        dish.imageUrl,
-        dish.detailImageUrl,
-        tagsToString(dish.tags),
-        dish.spicyLevel,
-        dish.calories,
-        dish.ingredients,
-        dish.allergens);
+    menuChanged(storeId);
+    jdbcTemplate.update(INSERT_DISH, dishRow(storeId, categoryId, dish.id, dish));
 
     if (dish.optionGroups != null && !dish.optionGroups.isEmpty()) {
       replaceOptionGroups(dish.id, dish.optionGroups);
@@ -238,91 +358,154 @@ public class MenuService {
     return dish;
   }
 
+  // diffs the incoming menu against the stored rows and writes only what changed; ids of matched rows are kept
   @Transactional
-  public void replaceMenu(String storeId, List<MenuCategory> categories) {
+  public MenuPatch replaceMenu(String storeId, List<MenuCategory> categories) {
     log.info("replaceMenu start: storeId={} categories={}", storeId, categories == null ? 0 : categories.size());
-    List<String> dishIds = jdbcTemplate.query(
-        "SELECT id FROM dishes WHERE store_id=?",
-        new Object[] { storeId },
-        (rs, rowNum) -> rs.getString("id"));
-    if (!dishIds.isEmpty()) {
-      String in = dishIds.stream().map(id -> "?").collect(Collectors.joining(","));
-      List<Object> args = new ArrayList<>(dishIds);
-      List<String> groupIds = jdbcTemplate.query(
-          "SELECT id FROM option_groups WHERE dish_id IN (" + in + ")",
-          args.toArray(),
-          (rs, rowNum) -> rs.getString("id"));
-      if (!groupIds.isEmpty()) {
-        String gin = groupIds.stream().map(id -> "?").collect(Collectors.joining(","));
-        jdbcTemplate.update("DELETE FROM option_items WHERE group_id IN (" + gin + ")", groupIds.toArray());
-      }
-      jdbcTemplate.update("DELETE FROM option_groups WHERE dish_id IN (" + in + ")", args.toArray());
-      jdbcTemplate.update("DELETE FROM dishes WHERE store_id=?", storeId);
+    long started = System.currentTimeMillis();
+    // bumping first also locks the version row, so concurrent menu writers for the store queue behind this diff
+    long version = menuChanged(storeId);
+    MenuDiff diff = MenuDiff.compute(readMenu(storeId), categories == null ? List.of() : categories);
+    if (!diff.isEmpty()) {
+      apply(storeId, diff);
     }
-    jdbcTemplate.update("DELETE FROM menu_categories WHERE store_id=?", storeId);
+    diffRowsWritten.increment(diff.rowsWritten());
+    diffNaiveRows.increment(diff.naiveRows());
+    log.info("replaceMenu done: storeId={} rowsWritten={} naiveRows={} tookMs={}",
+        storeId, diff.rowsWritten(), diff.naiveRows(), System.currentTimeMillis() - started);
+    // a first version is seeded from the clock, so version - 1 then matches no ETag and clients reload in full
+    return diff.patch(storeId, version - 1, version);
+  }
 
-    if (categories == null) return;
-    for (MenuCategory category : categories) {
-      String categoryId = category.id == null ? UUID.randomUUID().toString() : category.id;
-      jdbcTemplate.update(
-          "INSERT INTO menu_categories (id, store_id, name) VALUES (?, ?, ?)",
-          categoryId, storeId, category.name);
-      if (category.dishes == null) continue;
-      for (Dish dish : category.dishes) {
-        String dishId = dish.id == null ? UUID.randomUUID().toString() : dish.id;
-        jdbcTemplate.update(
-            "INSERT INTO dishes (id, store_id, category_id, name, price, description, image_url, detail_image_url, tags, spicy_level, calories, ingredients, allergens) "
-                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-            dishId,
-            storeId,
-            categoryId,
-            dish.name,
-            dish.price == null ? BigDecimal.ZERO : dish.price,
-            dish.description,
-            dish.imageUrl,
-            dish.detailImageUrl,
-            tagsToString(dish.tags),
-            dish.spicyLevel,
-            dish.calories,
-            dish.ingredients,
-            dish.allergens);
-      }
+  private void apply(String storeId, MenuDiff diff) {
+    List<Object[]> rows = new ArrayList<>();
+    for (MenuCategory category : diff.insertedCategories) {
+      rows.add(new Object[] { category.id, storeId, category.name });
+    }
+    batch(INSERT_CATEGORY, rows);
+    rows = new ArrayList<>();
+    for (MenuCategory category : diff.renamedCategories) {
+      rows.add(new Object[] { category.name, category.id, storeId });
     }
-    log.info("replaceMenu done: storeId={}", storeId);
+    batch("UPDATE menu_categories SET name=? WHERE id=? AND store_id=?", rows);
+    rows = new ArrayList<>();
+    for (Dish dish : diff.insertedDishes) {
+      rows.add(dishRow(storeId, dish.categoryId, dish.id, dish));
+    }
+    batch(INSERT_DISH, rows);
+    rows = new ArrayList<>();
+    for (Dish dish : diff.updatedDishes) {
+      rows.add(new Object[] {
+          dish.categoryId,
+          dish.name,
+          (dish.price == null ? Money.ZERO : dish.price).toDecimal(),
+          dish.description,
+          dish.imageUrl,
+          dish.detailImageUrl,
+          tagsToString(dish.tags),
+          dish.spicyLevel,
+          dish.calories,
+          dish.ingredients,
+          dish.allergens,
+          dish.id,
+          storeId });
+    }
+    batch("UPDATE dishes SET category_id=?, name=?, price=?, description=?, image_url=?, detail_image_url=?, tags=?, "
+        + "spicy_level=?, calories=?, ingredients=?, allergens=? WHERE id=? AND store_id=?", rows);
+    deleteOptionGroups(diff.clearedOptionDishIds);
+    insertOptionGroups(diff.optionGroups);
+    deleteByIds("dishes", storeId, diff.removedDishIds);
+    deleteByIds("menu_categories", storeId, diff.removedCategoryIds);
   }
 
-  private void replaceOptionGroups(String dishId, List<OptionGroup> groups) {
-    List<String> groupIds = jdbcTemplate.query(
-        "SELECT id FROM option_groups WHERE dish_id=?",
-        new Object[] { dishId },
-        (rs, rowNum) -> rs.getString("id"));
-    if (!groupIds.isEmpty()) {
-      String in = groupIds.stream().map(id -> "?").collect(Collectors.joining(","));
-      jdbcTemplate.update("DELETE FROM option_items WHERE group_id IN (" + in + ")", groupIds.toArray());
-      jdbcTemplate.update("DELETE FROM option_groups WHERE dish_id=?", dishId);
+  private long menuChanged(String storeId) {
+    // versions start from the clock so an ETag kept by a client never matches a store whose versions were reset
+    jdbcTemplate.update(
+        "INSERT INTO menu_versions (store_id, version) VALUES (?, ?) ON DUPLICATE KEY UPDATE version = version + 1",
+        storeId, System.currentTimeMillis());
+    evictSnapshot(storeId);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      // evict again once committed, in case a reader rebuilt from the old rows meanwhile
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          evictSnapshot(storeId);
+        }
+      });
     }
+    return menuVersion(storeId);
+  }
+
+  private void evictSnapshot(String storeId) {
+    snapshots.remove(storeId);
+    loading.remove(storeId);
+  }
+
+  private void replaceOptionGroups(String dishId, List<OptionGroup> groups) {
+    deleteOptionGroups(List.of(dishId));
+    insertOptionGroups(Map.of(dishId, groups));
+  }
 
-    for (OptionGroup group : groups) {
-      String groupId = group.id == null ? UUID.randomUUID().toString() : group.id;
+  private void deleteOptionGroups(List<String> dishIds) {
+    for (int i = 0; i < dishIds.size(); i += BATCH_SIZE) {
+      List<String> chunk = dishIds.subList(i, Math.min(dishIds.size(), i + BATCH_SIZE));
+      String in = chunk.stream().map(id -> "?").collect(Collectors.joining(","));
       jdbcTemplate.update(
-          "INSERT INTO option_groups (id, dish_id, name, multi_select) VALUES (?, ?, ?, ?)",
-          groupId,
-          dishId,
-          group.name,
-          group.multiSelect);
+          "DELETE oi FROM option_items oi JOIN option_groups og ON og.id = oi.group_id WHERE og.dish_id IN (" + in + ")",
+          chunk.toArray());
+      jdbcTemplate.update("DELETE FROM option_groups WHERE dish_id IN (" + in + ")", chunk.toArray());
+    }
+  }
 
-      if (group.items != null) {
+  private void insertOptionGroups(Map<String, List<OptionGroup>> groupsByDish) {
+    List<Object[]> groupRows = new ArrayList<>();
+    List<Object[]> itemRows = new ArrayList<>();
+    for (Map.Entry<String, List<OptionGroup>> entry : groupsByDish.entrySet()) {
+      for (OptionGroup group : entry.getValue()) {
+        String groupId = group.id == null ? UUID.randomUUID().toString() : group.id;
+        groupRows.add(new Object[] { groupId, entry.getKey(), group.name, group.multiSelect });
+        if (group.items == null) continue;
         for (OptionItem item : group.items) {
           String itemId = item.id == null ? UUID.randomUUID().toString() : item.id;
-          jdbcTemplate.update(
-              "INSERT INTO option_items (id, group_id, name, extra_price) VALUES (?, ?, ?, ?)",
-              itemId,
-              groupId,
-              item.name,
-              item.extraPrice == null ? BigDecimal.ZERO : item.extraPrice);
+          itemRows.add(new Object[] {
+              itemId, groupId, item.name, (item.extraPrice == null ? Money.ZERO : item.extraPrice).toDecimal() });
         }
       }
     }
+    batch("INSERT INTO option_groups (id, dish_id, name, multi_select) VALUES (?, ?, ?, ?)", groupRows);
+    batch("INSERT INTO option_items (id, group_id, name, extra_price) VALUES (?, ?, ?, ?)", itemRows);
+  }
+
+  // rewriteBatchedStatements turns each INSERT chunk into one multi-row statement
+  private void batch(String sql, List<Object[]> rows) {
+    for (int i = 0; i < rows.size(); i += BATCH_SIZE) {
+      jdbcTemplate.batchUpdate(sql, rows.subList(i, Math.min(rows.size(), i + BATCH_SIZE)));
+    }
+  }
+
+  private void deleteByIds(String table, String storeId, List<String> ids) {
+    for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+      List<Object> chunk = new ArrayList<>(ids.subList(i, Math.min(ids.size(), i + BATCH_SIZE)));
+      String in = chunk.stream().map(id -> "?").collect(Collectors.joining(","));
+      jdbcTemplate.update("DELETE FROM " + table + " WHERE store_id=? AND id IN (" + in + ")", withArgs(storeId, chunk));
+    }
+  }
+
+  private Object[] dishRow(String storeId, String categoryId, String dishId, Dish dish) {
+    return new Object[] {
+        dishId,
+        storeId,
+        categoryId,
+        dish.name,
+        (dish.price == null ? Money.ZERO : dish.price).toDecimal(),
+        dish.description,
+        dish.imageUrl,
+        dish.detailImageUrl,
+        tagsToString(dish.tags),
+        dish.spicyLevel,
+        dish.calories,
+        dish.ingredients,
+        dish.allergens };
   }
 
   private String tagsToString(List<String> tags) {
@@ -341,4 +524,38 @@ public class MenuService {
     list.addAll(args);
     return list.toArray();
   }
+
+  // LRU over stores, bounded by entry count and by the total size of the encoded payloads
+  private static class SnapshotLru {
+    private final int maxStores;
+    private final long maxBytes;
+    private final LinkedHashMap<String, MenuSnapshot> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    SnapshotLru(int maxStores, long maxBytes) {
+      this.maxStores = maxStores;
+      this.maxBytes = maxBytes;
+    }
+
+    synchronized MenuSnapshot get(String storeId) {
+      return entries.get(storeId);
+    }
+
+    synchronized void put(String storeId, MenuSnapshot snapshot) {
+      MenuSnapshot previous = entries.put(storeId, snapshot);
+      bytes += snapshot.bytes() - (previous == null ? 0 : previous.bytes());
+      Iterator<MenuSnapshot> eldest = entries.values().iterator();
+      while ((entries.size() > maxStores || bytes > maxBytes) && entries.size() > 1) {
+        bytes -= eldest.next().bytes();
+        eldest.remove();
+      }
+    }
+
+    synchronized void remove(String storeId) {
+      MenuSnapshot previous = entries.remove(storeId);
+      if (previous != null) {
+        bytes -= previous.bytes();
+      }
+    }
+  }
 }
@@ -0,0 +1,145 @@
+package com.smartorder.service;
+
+import com.smartorder.model.Dish;
+import com.smartorder.model.DishPage;
+import com.smartorder.model.DishSummary;
+import com.smartorder.model.LiteCategory;
+import com.smartorder.model.LiteMenu;
+import com.smartorder.model.Menu;
+import com.smartorder.model.MenuCategory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// One store's menu as of a menu_version, with its projections and response bodies built once. Everything here is
+// shared by every reader and must not be mutated.
+public class MenuSnapshot {
+  private final String storeId;
+  private final long version;
+  private final Menu menu;
+  private final LiteMenu lite;
+  private final MenuPriceIndex prices;
+  private final Map<String, Dish> dishes = new HashMap<>();
+  private final List<DishSummary> summaries = new ArrayList<>();
+  private final Map<String, Integer> summaryPositions = new HashMap<>();
+  private final MenuPayload fullPayload;
+  private final MenuPayload litePayload;
+  volatile long checkedAt;
+
+  MenuSnapshot(String storeId, long version, Menu menu, LiteMenu lite, MenuPayload fullPayload, MenuPayload litePayload,
+               long checkedAt) {
+    this.storeId = storeId;
+    this.version = version;
+    this.menu = menu;
+    this.lite = lite;
+    this.prices = MenuPriceIndex.compile(menu);
+    this.fullPayload = fullPayload;
+    this.litePayload = litePayload;
+    this.checkedAt = checkedAt;
+    for (MenuCategory category : menu.categories) {
+      for (Dish dish : category.dishes) {
+        dishes.put(dish.id, dish);
+      }
+    }
+    for (LiteCategory category : lite.categories) {
+      for (DishSummary summary : category.dishes) {
+        summaryPositions.put(summary.id, summaries.size());
+        summaries.add(summary);
+      }
+    }
+  }
+
+  public static LiteMenu lite(Menu menu) {
+    LiteMenu lite = new LiteMenu();
+    lite.storeId = menu.storeId;
+    for (MenuCategory category : menu.categories) {
+      LiteCategory liteCategory = new LiteCategory();
+      liteCategory.id = category.id;
+      liteCategory.name = category.name;
+      for (Dish dish : category.dishes) {
+        liteCategory.dishes.add(summary(category.id, dish));
+      }
+      lite.categories.add(liteCategory);
+    }
+    return lite;
+  }
+
+  static DishSummary summary(String categoryId, Dish dish) {
+    DishSummary summary = new DishSummary();
+    summary.id = dish.id;
+    summary.categoryId = categoryId;
+    summary.name = dish.name;
+    summary.price = dish.price;
+    summary.imageUrl = dish.imageUrl;
+    summary.tags = dish.tags;
+    summary.spicyLevel = dish.spicyLevel;
+    summary.hasOptions = dish.optionGroups != null && !dish.optionGroups.isEmpty();
+    return summary;
+  }
+
+  public String storeId() {
+    return storeId;
+  }
+
+  public long version() {
+    return version;
+  }
+
+  public Menu menu() {
+    return menu;
+  }
+
+  public LiteMenu liteMenu() {
+    return lite;
+  }
+
+  public MenuPriceIndex prices() {
+    return prices;
+  }
+
+  public Dish dish(String dishId) {
+    return dishes.get(dishId);
+  }
+
+  // keyset over the snapshot's dish order; the cursor is the last dish id of the previous page
+  public DishPage dishPage(String categoryId, String cursor, int limit) {
+    int start = 0;
+    if (cursor != null && !cursor.isBlank()) {
+      Integer position = summaryPositions.get(cursor);
+      if (position == null) {
+        throw new IllegalArgumentException("Unknown cursor");
+      }
+      start = position + 1;
+    }
+    DishPage page = new DishPage();
+    for (int i = start; i < summaries.size(); i++) {
+      DishSummary summary = summaries.get(i);
+      if (categoryId != null && !categoryId.equals(summary.categoryId)) {
+        continue;
+      }
+      if (page.items.size() == limit) {
+        page.nextCursor = page.items.get(limit - 1).id;
+        break;
+      }
+      page.items.add(summary);
+    }
+    return page;
+  }
+
+  public String etag() {
+    return "W/\"menu-" + version + "\"";
+  }
+
+  public MenuPayload fullPayload() {
+    return fullPayload;
+  }
+
+  public MenuPayload litePayload() {
+    return litePayload;
+  }
+
+  long bytes() {
+    return fullPayload.bytes() + litePayload.bytes();
+  }
+}
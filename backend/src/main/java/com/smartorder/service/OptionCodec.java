@@ -0,0 +1,45 @@
+package com.smartorder.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartorder.model.SelectedOption;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class OptionCodec {
+  private static final TypeReference<List<SelectedOption>> OPTIONS = new TypeReference<>() {};
+
+  private final ObjectMapper objectMapper;
+  private final String storage;
+
+  public OptionCodec(ObjectMapper objectMapper, @Value("${app.options.storage:json}") String storage) {
+    this.objectMapper = objectMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    this.storage = storage;
+  }
+
+  public boolean writeRows() {
+    return !"json".equals(storage);
+  }
+
+  public String encode(List<SelectedOption> options) {
+    if ("rows".equals(storage)) {
+      return null;
+    }
+    try {
+      return objectMapper.writeValueAsString(options == null ? List.of() : options);
+    } catch (Exception ex) {
+      throw new IllegalStateException("Unable to encode options", ex);
+    }
+  }
+
+  public List<SelectedOption> decode(String json) {
+    try {
+      return objectMapper.readValue(json, OPTIONS);
+    } catch (Exception ex) {
+      throw new IllegalStateException("Unable to decode options", ex);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.smartorder.service;
+
+import com.smartorder.model.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class OrderIdempotency {
+  private final OrderService orderService;
+  private final StringRedisTemplate redisTemplate;
+  private final boolean shared;
+  private final long ttlMillis;
+  private final Map<String, CachedOrder> local;
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter duplicates;
+
+  public OrderIdempotency(OrderService orderService, StringRedisTemplate redisTemplate, MeterRegistry registry,
+                          @Value("${app.orders.idempotency.store:local}") String store,
+                          @Value("${app.orders.idempotency.ttl-seconds:600}") long ttlSeconds,
+                          @Value("${app.orders.idempotency.max-entries:10000}") int maxEntries) {
+    this.orderService = orderService;
+    this.redisTemplate = redisTemplate;
+    this.shared = "redis".equals(store);
+    this.ttlMillis = ttlSeconds * 1000;
+    this.local = new LinkedHashMap<>(maxEntries * 2, 0.75f, false) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedOrder> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    this.hits = Counter.builder("orders.idempotency").tag("result", "hit").register(registry);
+    this.misses = Counter.builder("orders.idempotency").tag("result", "miss").register(registry);
+    this.duplicates = Counter.builder("orders.idempotency").tag("result", "duplicate").register(registry);
+  }
+
+  public Order lookup(String storeId, String key) {
+    if (key == null) return null;
+    String orderId = cached(storeId, key);
+    if (orderId != null) {
+      hits.increment();
+      return orderService.getOrder(orderId);
+    }
+    misses.increment();
+    return null;
+  }
+
+  public void remember(Order order) {
+    if (order.idempotencyKey == null) return;
+    String cacheKey = cacheKey(order.storeId, order.idempotencyKey);
+    if (shared) {
+      redisTemplate.opsForValue().set(cacheKey, order.orderId, Duration.ofMillis(ttlMillis));
+      return;
+    }
+    synchronized (local) {
+      local.put(cacheKey, new CachedOrder(order.orderId, System.currentTimeMillis() + ttlMillis));
+    }
+  }
+
+  public Order resolveDuplicate(String storeId, String key) {
+    duplicates.increment();
+    Order order = orderService.findByIdempotencyKey(storeId, key);
+    if (order == null) {
+      throw new IllegalStateException("Duplicate order key without a stored order: " + key);
+    }
+    remember(order);
+    return order;
+  }
+
+  private String cached(String storeId, String key) {
+    String cacheKey = cacheKey(storeId, key);
+    if (shared) {
+      return redisTemplate.opsForValue().get(cacheKey);
+    }
+    synchronized (local) {
+      CachedOrder cached = local.get(cacheKey);
+      if (cached == null) return null;
+      if (cached.expiresAt < System.currentTimeMillis()) {
+        local.remove(cacheKey);
+        return null;
+      }
+      return cached.orderId;
+    }
+  }
+
+  private String cacheKey(String storeId, String key) {
+    return "order:idem:" + storeId + ":" + key;
+  }
+
+  private static class CachedOrder {
+    final String orderId;
+    final long expiresAt;
+
+    CachedOrder(String orderId, long expiresAt) {
+      this.orderId = orderId;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package com.smartorder.service;
+
+import com.smartorder.model.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class OrderIngestQueue {
+  private static final Logger log = LoggerFactory.getLogger(OrderIngestQueue.class);
+
+  private final OrderService orderService;
+  private final boolean enabled;
+  private final int maxBatch;
+  private final long maxWaitNanos;
+  private final List<Shard> shards = new ArrayList<>();
+  private final DistributionSummary batches;
+  private final Timer commits;
+  private final Counter rejected;
+  private volatile boolean running = true;
+
+  public OrderIngestQueue(OrderService orderService, MeterRegistry registry,
+                          @Value("${app.orders.ingest.mode:direct}") String mode,
+                          @Value("${app.orders.ingest.shards:4}") int shardCount,
+                          @Value("${app.orders.ingest.capacity:1024}") int capacity,
+                          @Value("${app.orders.ingest.max-batch:64}") int maxBatch,
+                          @Value("${app.orders.ingest.max-wait-ms:5}") long maxWaitMs) {
+    this.orderService = orderService;
+    this.enabled = "group-commit".equals(mode);
+    this.maxBatch = maxBatch;
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+    this.batches = DistributionSummary.builder("orders.ingest.batch").register(registry);
+    this.commits = Timer.builder("orders.ingest.commit").register(registry);
+    this.rejected = Counter.builder("orders.ingest.rejected").register(registry);
+    if (!enabled) {
+      return;
+    }
+    for (int i = 0; i < shardCount; i++) {
+      Shard shard = new Shard(capacity);
+      Thread writer = new Thread(() -> runWriter(shard), "order-ingest-" + i);
+      writer.setDaemon(true);
+      shard.writer = writer;
+      shards.add(shard);
+      writer.start();
+    }
+    Gauge.builder("orders.ingest.queued", shards, list -> list.stream().mapToInt(s -> s.queue.size()).sum()).register(registry);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public CompletableFuture<Order> submit(Order order) {
+    Pending pending = new Pending(order);
+    Shard shard = shards.get(Math.floorMod(order.storeId == null ? 0 : order.storeId.hashCode(), shards.size()));
+    if (!shard.queue.offer(pending)) {
+      rejected.increment();
+      throw new RejectedExecutionException("Order ingest queue full");
+    }
+    return pending.future;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    running = false;
+    for (Shard shard : shards) {
+      shard.writer.interrupt();
+    }
+  }
+
+  private void runWriter(Shard shard) {
+    List<Pending> batch = new ArrayList<>(maxBatch);
+    while (running) {
+      try {
+        Pending first = shard.queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) continue;
+        batch.add(first);
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatch) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) break;
+          Pending next = shard.queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) break;
+          batch.add(next);
+        }
+        commit(batch);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      } finally {
+        batch.clear();
+      }
+    }
+    List<Pending> leftover = new ArrayList<>();
+    shard.queue.drainTo(leftover);
+    for (Pending pending : leftover) {
+      pending.future.completeExceptionally(new RejectedExecutionException("Order ingest stopped"));
+    }
+  }
+
+  private void commit(List<Pending> batch) {
+    List<Order> orders = new ArrayList<>(batch.size());
+    for (Pending pending : batch) {
+      orders.add(pending.order);
+    }
+    long start = System.nanoTime();
+    try {
+      orderService.writeOrders(orders);
+      commits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      batches.record(batch.size());
+      for (Pending pending : batch) {
+        pending.future.complete(pending.order);
+      }
+    } catch (Exception ex) {
+      log.warn("Order group commit failed, retrying individually: size={}", batch.size(), ex);
+      for (Pending pending : batch) {
+        try {
+          orderService.writeOrders(List.of(pending.order));
+          batches.record(1);
+          pending.future.complete(pending.order);
+        } catch (Exception single) {
+          pending.future.completeExceptionally(single);
+        }
+      }
+    }
+  }
+
+  private static class Shard {
+    final BlockingQueue<Pending> queue;
+    Thread writer;
+
+    Shard(int capacity) {
+      this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+  }
+
+  private static class Pending {
+    final Order order;
+    final CompletableFuture<Order> future = new CompletableFuture<>();
+
+    Pending(Order order) {
+      this.order = order;
+    }
+  }
+}
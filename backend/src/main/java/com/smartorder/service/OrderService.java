@@ -1,26 +1,41 @@
 package com.smartorder.service;
 
 import com.smartorder.api.dto.CreateOrderRequest;
+import com.smartorder.api.dto.OrderBatchUpdateRequest;
+import com.smartorder.api.dto.OrderBatchUpdateResult;
 import com.smartorder.api.dto.PaymentUpdateRequest;
 import com.smartorder.api.dto.StatusUpdateRequest;
+import com.smartorder.model.Money;
 import com.smartorder.model.Order;
+import com.smartorder.model.OrderDelta;
 import com.smartorder.model.OrderItem;
+import com.smartorder.model.OrderPage;
 import com.smartorder.model.OrderStatus;
 import com.smartorder.model.PaymentStatus;
 import com.smartorder.model.SelectedOption;
 import com.smartorder.model.TableStatus;
-import java.math.BigDecimal;
+import com.smartorder.ws.WsTopics;
+import java.nio.charset.StandardCharsets;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
@@ -28,16 +43,31 @@ import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class OrderService {
+  private static final int MAX_PAGE_SIZE = 200;
+  private static final int IN_CHUNK = 500;
+  private static final String DELTA_COLUMNS = "id, store_id, table_no, status, payment_status, version, updated_at";
+
   private final JdbcTemplate jdbcTemplate;
   private final TableService tableService;
+  private final OutboxService outboxService;
+  private final OptionCodec optionCodec;
+  private final MenuService menuService;
+  private final PrepBoardService prepBoard;
+  private final WsTopics topics;
 
-  public OrderService(JdbcTemplate jdbcTemplate, TableService tableService) {
+  public OrderService(JdbcTemplate jdbcTemplate, TableService tableService, OutboxService outboxService,
+                      OptionCodec optionCodec, MenuService menuService, PrepBoardService prepBoard,
+                      WsTopics topics) {
     this.jdbcTemplate = jdbcTemplate;
     this.tableService = tableService;
+    this.outboxService = outboxService;
+    this.optionCodec = optionCodec;
+    this.menuService = menuService;
+    this.prepBoard = prepBoard;
+    this.topics = topics;
   }
 
-  @Transactional
-  public Order createOrder(CreateOrderRequest request) {
+  public Order prepareOrder(CreateOrderRequest request) {
     Order order = new Order();
     order.orderId = UUID.randomUUID().toString();
     order.storeId = request.storeId;
@@ -48,48 +78,60 @@ public class OrderService {
     order.peopleCount = request.peopleCount;
     order.remark = request.remark;
     order.items = request.items == null ? new ArrayList<>() : request.items;
-    order.totalAmount = calculateTotal(order.items);
+    order.totalAmount = priceItems(request.storeId, order.items);
     order.createdAt = Instant.now();
     order.updatedAt = order.createdAt;
+    return order;
+  }
 
-    jdbcTemplate.update(
-        "INSERT INTO orders (id, store_id, table_no, client_id, status, payment_status, people_count, remark, total_amount, created_at, updated_at) "
-            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-        order.orderId,
-        order.storeId,
-        order.tableNo,
-        order.clientId,
-        order.status.name(),
-        order.paymentStatus.name(),
-        order.peopleCount,
-        order.remark,
-        order.totalAmount,
-        Timestamp.from(order.createdAt),
-        Timestamp.from(order.updatedAt));
-
-    for (OrderItem item : order.items) {
-      long itemId = insertOrderItem(order.orderId, item);
-      item.id = itemId;
-      if (item.selectedOptions != null && !item.selectedOptions.isEmpty()) {
-        for (SelectedOption option : item.selectedOptions) {
-          jdbcTemplate.update(
-              "INSERT INTO order_item_options (order_item_id, group_id, group_name, option_id, option_name, extra_price) "
-                  + "VALUES (?, ?, ?, ?, ?, ?)",
-              itemId,
-              option.groupId,
-              option.groupName,
-              option.optionId,
-              option.optionName,
-              option.extraPrice == null ? BigDecimal.ZERO : option.extraPrice);
-        }
-      }
+  @Transactional
+  public void writeOrders(List<Order> orders) {
+    insertOrders(orders);
+    for (Order order : orders) {
+      outboxService.enqueue("ORDER_CREATED", order, topics.staffAndTable(order.storeId, order.tableNo));
+      outboxService.enqueue("TABLE_UPDATED", order.tableNo, topics.cashier(order.storeId));
     }
+  }
 
-    tableService.setStatus(order.storeId, order.tableNo, TableStatus.DINING);
-    return order;
+  @Transactional
+  public void insertOrders(List<Order> orders) {
+    List<Object[]> orderArgs = new ArrayList<>();
+    for (Order order : orders) {
+      orderArgs.add(new Object[] {
+          order.orderId,
+          order.storeId,
+          order.tableNo,
+          order.clientId,
+          order.idempotencyKey,
+          order.status.name(),
+          order.paymentStatus.name(),
+          order.peopleCount,
+          order.remark,
+          order.totalAmount.toDecimal(),
+          order.discountAmount.toDecimal(),
+          Timestamp.from(order.createdAt),
+          Timestamp.from(order.updatedAt)
+      });
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO orders (id, store_id, table_no, client_id, idempotency_key, status, payment_status, people_count, remark, total_amount, discount_amount, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        orderArgs);
+
+    insertOrderItems(orders);
+    prepBoard.ordersOpened(orders);
+
+    Map<String, List<String>> tablesByStore = new LinkedHashMap<>();
+    for (Order order : orders) {
+      List<String> tables = tablesByStore.computeIfAbsent(order.storeId, id -> new ArrayList<>());
+      if (!tables.contains(order.tableNo)) tables.add(order.tableNo);
+    }
+    tablesByStore.forEach((storeId, tableNos) -> tableService.setStatuses(storeId, tableNos, TableStatus.DINING));
   }
 
-  public List<Order> listOrders(String storeId, String tableNo, String status) {
+  public OrderPage listOrders(String storeId, String tableNo, String status, boolean openOnly, Instant since,
+                              Instant until, String cursor, int limit, boolean withItems) {
+    int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     StringBuilder sql = new StringBuilder("SELECT * FROM orders WHERE 1=1");
     List<Object> args = new ArrayList<>();
     if (storeId != null && !storeId.isBlank()) {
@@ -104,120 +146,214 @@ public class OrderService {
       sql.append(" AND status=?");
       args.add(status);
     }
-    sql.append(" ORDER BY created_at DESC");
+    if (openOnly) {
+      sql.append(" AND status<>?");
+      args.add(OrderStatus.CLOSED.name());
+    }
+    if (since != null) {
+      sql.append(" AND created_at>=?");
+      args.add(Timestamp.from(since));
+    }
+    if (until != null) {
+      sql.append(" AND created_at<?");
+      args.add(Timestamp.from(until));
+    }
+    if (cursor != null && !cursor.isBlank()) {
+      String[] parts = decodeCursor(cursor);
+      Timestamp createdAt = Timestamp.from(Instant.ofEpochMilli(Long.parseLong(parts[0])));
+      sql.append(" AND (created_at<? OR (created_at=? AND id<?))");
+      args.add(createdAt);
+      args.add(createdAt);
+      args.add(parts[1]);
+    }
+    sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+    args.add(pageSize + 1);
 
-    List<Order> orders = jdbcTemplate.query(sql.toString(), args.toArray(), (rs, rowNum) -> {
-      Order order = new Order();
-      order.orderId = rs.getString("id");
-      order.storeId = rs.getString("store_id");
-      order.tableNo = rs.getString("table_no");
-      order.clientId = rs.getString("client_id");
-      order.status = OrderStatus.valueOf(rs.getString("status"));
-      order.paymentStatus = PaymentStatus.valueOf(rs.getString("payment_status"));
-      order.peopleCount = rs.getObject("people_count", Integer.class);
-      order.remark = rs.getString("remark");
-      order.totalAmount = rs.getBigDecimal("total_amount");
-      order.createdAt = rs.getTimestamp("created_at").toInstant();
-      order.updatedAt = rs.getTimestamp("updated_at").toInstant();
-      Timestamp paidAt = rs.getTimestamp("paid_at");
-      order.paidAt = paidAt == null ? null : paidAt.toInstant();
-      order.paidBy = rs.getString("paid_by");
-      Timestamp clearedAt = rs.getTimestamp("cleared_at");
-      order.clearedAt = clearedAt == null ? null : clearedAt.toInstant();
-      order.clearedBy = rs.getString("cleared_by");
-      return order;
-    });
+    List<Order> orders = jdbcTemplate.query(sql.toString(), orderRowMapper(), args.toArray());
+    OrderPage page = new OrderPage();
+    if (orders.size() > pageSize) {
+      orders = new ArrayList<>(orders.subList(0, pageSize));
+      Order last = orders.get(pageSize - 1);
+      page.nextCursor = encodeCursor(last.createdAt, last.orderId);
+    }
+    if (withItems) {
+      hydrateItems(orders);
+    }
+    page.items = orders;
+    return page;
+  }
 
-    if (orders.isEmpty()) {
-      return orders;
-    }
-
-    Map<String, Order> orderMap = orders.stream().collect(Collectors.toMap(o -> o.orderId, o -> o));
-    String orderIdsIn = orders.stream().map(o -> "?").collect(Collectors.joining(","));
-    List<Object> orderIdArgs = orders.stream().map(o -> o.orderId).collect(Collectors.toList());
-
-    List<OrderItem> items = jdbcTemplate.query(
-        "SELECT * FROM order_items WHERE order_id IN (" + orderIdsIn + ")",
-        orderIdArgs.toArray(),
-        (rs, rowNum) -> {
-          OrderItem item = new OrderItem();
-          item.id = rs.getLong("id");
-          item.orderId = rs.getString("order_id");
-          item.dishId = rs.getString("dish_id");
-          item.dishName = rs.getString("dish_name");
-          item.qty = rs.getInt("qty");
-          item.unitPrice = rs.getBigDecimal("unit_price");
-          item.lineTotal = rs.getBigDecimal("line_total");
-          item.itemRemark = rs.getString("item_remark");
-          item.selectedOptions = new ArrayList<>();
-          return item;
-        });
+  @Transactional
+  public OrderDelta updateStatus(String orderId, String storeId, StatusUpdateRequest request) {
+    if (request.status == null || request.status.predecessors().isEmpty()) {
+      throw new IllegalArgumentException("Invalid status transition");
+    }
+    List<OrderStatus> from = request.status.predecessors();
+    StringBuilder sql = new StringBuilder(
+        "UPDATE orders SET status=?, version=version+1, updated_at=? WHERE id=? AND status IN (" + placeholders(from.size()) + ")");
+    List<Object> args = new ArrayList<>();
+    args.add(request.status.name());
+    args.add(Timestamp.from(Instant.now()));
+    args.add(orderId);
+    for (OrderStatus status : from) {
+      args.add(status.name());
+    }
+    int updated = jdbcTemplate.update(appendGuards(sql, args, storeId, request.version), args.toArray());
 
-    Map<Long, OrderItem> itemMap = new HashMap<>();
-    for (OrderItem item : items) {
-      itemMap.put(item.id, item);
-      Order order = orderMap.get(item.orderId);
-      if (order != null) {
-        order.items.add(item);
-      }
+    OrderDelta delta = requireDelta(orderId, storeId, updated);
+    if (!delta.status.inKitchen()) {
+      prepBoard.ordersClosed(delta.storeId, List.of(delta.orderId));
     }
+    outboxService.enqueue("ORDER_UPDATED", delta, topics.staffAndTable(delta.storeId, delta.tableNo));
+    return delta;
+  }
 
-    if (!itemMap.isEmpty()) {
-      String itemIdsIn = itemMap.keySet().stream().map(id -> "?").collect(Collectors.joining(","));
-      List<Object> itemArgs = new ArrayList<>(itemMap.keySet());
-      jdbcTemplate.query(
-          "SELECT * FROM order_item_options WHERE order_item_id IN (" + itemIdsIn + ")",
-          itemArgs.toArray(),
-          (rs, rowNum) -> {
-            long itemId = rs.getLong("order_item_id");
-            OrderItem item = itemMap.get(itemId);
-            if (item != null) {
-              SelectedOption option = new SelectedOption();
-              option.groupId = rs.getString("group_id");
-              option.groupName = rs.getString("group_name");
-              option.optionId = rs.getString("option_id");
-              option.optionName = rs.getString("option_name");
-              option.extraPrice = rs.getBigDecimal("extra_price");
-              item.selectedOptions.add(option);
-            }
-            return null;
-          });
+  @Transactional
+  public OrderDelta updatePayment(String orderId, String storeId, PaymentUpdateRequest request) {
+    if (request.paymentStatus == null) {
+      throw new IllegalArgumentException("Invalid payment status");
     }
+    Timestamp now = Timestamp.from(Instant.now());
+    StringBuilder sql = new StringBuilder(
+        "UPDATE orders SET payment_status=?, paid_by=?, paid_at=?, version=version+1, updated_at=? WHERE id=? AND payment_status<>?");
+    List<Object> args = new ArrayList<>();
+    args.add(request.paymentStatus.name());
+    args.add(request.paidBy);
+    args.add(now);
+    args.add(now);
+    args.add(orderId);
+    args.add(request.paymentStatus.name());
+    int updated = jdbcTemplate.update(appendGuards(sql, args, storeId, request.version), args.toArray());
 
-    return orders;
+    OrderDelta delta = requireDelta(orderId, storeId, updated);
+    if (delta.paymentStatus == PaymentStatus.PAID) {
+      tableService.setStatus(delta.storeId, delta.tableNo, TableStatus.TO_PAY);
+    }
+    outboxService.enqueue("ORDER_UPDATED", delta, topics.staffAndTable(delta.storeId, delta.tableNo));
+    outboxService.enqueue("TABLE_UPDATED", delta.tableNo, topics.cashier(delta.storeId));
+    return delta;
   }
 
-  public Order updateStatus(String orderId, StatusUpdateRequest request) {
-    Order order = requireOrder(orderId);
-    order.status = request.status;
-    order.updatedAt = Instant.now();
-    jdbcTemplate.update(
-        "UPDATE orders SET status=?, updated_at=? WHERE id=?",
-        order.status.name(), Timestamp.from(order.updatedAt), order.orderId);
-    return order;
-  }
+  @Transactional
+  public List<OrderBatchUpdateResult> updateBatch(String storeId, OrderBatchUpdateRequest request) {
+    List<OrderBatchUpdateResult> results = new ArrayList<>();
+    if (request.updates == null || request.updates.isEmpty()) return results;
 
-  public Order updatePayment(String orderId, PaymentUpdateRequest request) {
-    Order order = requireOrder(orderId);
-    order.paymentStatus = request.paymentStatus;
-    order.paidBy = request.paidBy;
-    order.paidAt = Instant.now();
-    order.updatedAt = order.paidAt;
+    Set<String> ids = new TreeSet<>();
+    for (OrderBatchUpdateRequest.Item item : request.updates) {
+      if (item.orderId != null) {
+        ids.add(item.orderId);
+      }
+    }
+    Map<String, OrderDelta> current = new HashMap<>();
+    for (List<Object> chunk : chunks(new ArrayList<>(ids))) {
+      List<Object> args = new ArrayList<>(chunk);
+      String sql = "SELECT " + DELTA_COLUMNS + " FROM orders WHERE id IN (" + placeholders(chunk.size()) + ")";
+      if (storeId != null) {
+        sql += " AND store_id=?";
+        args.add(storeId);
+      }
+      for (OrderDelta delta : jdbcTemplate.query(sql + " FOR UPDATE", deltaRowMapper(), args.toArray())) {
+        current.put(delta.orderId, delta);
+      }
+    }
 
-    jdbcTemplate.update(
-        "UPDATE orders SET payment_status=?, paid_by=?, paid_at=?, updated_at=? WHERE id=?",
-        order.paymentStatus.name(), order.paidBy, Timestamp.from(order.paidAt), Timestamp.from(order.updatedAt), order.orderId);
+    // Rows are locked, so the checks below hold until commit; group the survivors by target state.
+    Map<OrderStatus, List<String>> byStatus = new LinkedHashMap<>();
+    Map<PaymentStatus, List<String>> byPayment = new LinkedHashMap<>();
+    Set<String> claimed = new HashSet<>();
+    for (OrderBatchUpdateRequest.Item item : request.updates) {
+      OrderDelta delta = item.orderId == null ? null : current.get(item.orderId);
+      boolean validTarget = (item.status == null) != (item.paymentStatus == null)
+          && (item.status == null || !item.status.predecessors().isEmpty());
+      if (item.orderId == null || !validTarget || !claimed.add(item.orderId)) {
+        results.add(new OrderBatchUpdateResult(item.orderId, "INVALID", null));
+        continue;
+      }
+      if (delta == null) {
+        results.add(new OrderBatchUpdateResult(item.orderId, "NOT_FOUND", null));
+        continue;
+      }
+      boolean allowed = item.status != null
+          ? item.status.predecessors().contains(delta.status)
+          : item.paymentStatus != delta.paymentStatus;
+      if (!allowed || (item.expectedVersion != null && item.expectedVersion != delta.version)) {
+        results.add(new OrderBatchUpdateResult(item.orderId, "CONFLICT", delta));
+        continue;
+      }
+      if (item.status != null) {
+        byStatus.computeIfAbsent(item.status, key -> new ArrayList<>()).add(delta.orderId);
+        delta.status = item.status;
+      } else {
+        byPayment.computeIfAbsent(item.paymentStatus, key -> new ArrayList<>()).add(delta.orderId);
+        delta.paymentStatus = item.paymentStatus;
+      }
+      delta.version++;
+      results.add(new OrderBatchUpdateResult(item.orderId, "UPDATED", delta));
+    }
 
-    if (order.paymentStatus == PaymentStatus.PAID) {
-      tableService.setStatus(order.storeId, order.tableNo, TableStatus.TO_PAY);
+    Instant now = Instant.now();
+    for (Map.Entry<OrderStatus, List<String>> entry : byStatus.entrySet()) {
+      for (List<Object> chunk : chunks(entry.getValue())) {
+        List<Object> args = new ArrayList<>();
+        args.add(entry.getKey().name());
+        args.add(Timestamp.from(now));
+        args.addAll(chunk);
+        jdbcTemplate.update(
+            "UPDATE orders SET status=?, version=version+1, updated_at=? WHERE id IN (" + placeholders(chunk.size()) + ")",
+            args.toArray());
+      }
     }
-    return order;
+    for (Map.Entry<PaymentStatus, List<String>> entry : byPayment.entrySet()) {
+      for (List<Object> chunk : chunks(entry.getValue())) {
+        List<Object> args = new ArrayList<>();
+        args.add(entry.getKey().name());
+        args.add(request.paidBy);
+        args.add(Timestamp.from(now));
+        args.add(Timestamp.from(now));
+        args.addAll(chunk);
+        jdbcTemplate.update(
+            "UPDATE orders SET payment_status=?, paid_by=?, paid_at=?, version=version+1, updated_at=? WHERE id IN ("
+                + placeholders(chunk.size()) + ")",
+            args.toArray());
+      }
+    }
+
+    Map<String, List<OrderDelta>> updatedByStore = new LinkedHashMap<>();
+    for (OrderBatchUpdateResult result : results) {
+      if ("UPDATED".equals(result.outcome)) {
+        result.order.updatedAt = now;
+        updatedByStore.computeIfAbsent(result.order.storeId, key -> new ArrayList<>()).add(result.order);
+      }
+    }
+    Set<String> paidIds = new HashSet<>(byPayment.getOrDefault(PaymentStatus.PAID, List.of()));
+    for (Map.Entry<String, List<OrderDelta>> entry : updatedByStore.entrySet()) {
+      List<String> leftKitchen = new ArrayList<>();
+      for (OrderDelta delta : entry.getValue()) {
+        if (!delta.status.inKitchen()) leftKitchen.add(delta.orderId);
+      }
+      prepBoard.ordersClosed(entry.getKey(), leftKitchen);
+      publishBatch(entry.getKey(), entry.getValue(), paidIds);
+    }
+    return results;
   }
 
+  public Order getOrder(String orderId) {
+    return requireOrder(orderId);
+  }
+
+  public Order findByIdempotencyKey(String storeId, String key) {
+    List<Order> orders = jdbcTemplate.query(
+        "SELECT * FROM orders WHERE store_id=? AND idempotency_key=?", orderRowMapper(), storeId, key);
+    hydrateItems(orders);
+    return orders.isEmpty() ? null : orders.get(0);
+  }
+
+  @Transactional
   public int settleTable(String storeId, String tableNo, String paidBy) {
     Instant now = Instant.now();
     int count = jdbcTemplate.update(
-        "UPDATE orders SET payment_status=?, paid_by=?, paid_at=?, updated_at=? WHERE store_id=? AND table_no=? AND payment_status=?",
+        "UPDATE orders SET payment_status=?, paid_by=?, paid_at=?, version=version+1, updated_at=? WHERE store_id=? AND table_no=? AND payment_status=?",
         PaymentStatus.PAID.name(),
         paidBy,
         Timestamp.from(now),
@@ -229,13 +365,25 @@ public class OrderService {
     if (count > 0) {
       tableService.setStatus(storeId, tableNo, TableStatus.TO_PAY);
     }
+    outboxService.enqueue("TABLE_UPDATED", tableNo, topics.cashier(storeId));
+    outboxService.enqueue("ORDER_UPDATED", Map.of("tableNo", tableNo, "count", count), topics.staffAndTable(storeId, tableNo));
     return count;
   }
 
+  @Transactional
   public void clearTable(String storeId, String tableNo, String clearedBy) {
     Instant now = Instant.now();
+    List<String> leftKitchen = jdbcTemplate.queryForList(
+        "SELECT id FROM orders WHERE store_id=? AND table_no=? AND payment_status=? AND status IN (?, ?) FOR UPDATE",
+        String.class,
+        storeId,
+        tableNo,
+        PaymentStatus.PAID.name(),
+        OrderStatus.NEW.name(),
+        OrderStatus.ACCEPTED.name());
+    prepBoard.ordersClosed(storeId, leftKitchen);
     jdbcTemplate.update(
-        "UPDATE orders SET status=?, cleared_by=?, cleared_at=?, updated_at=? WHERE store_id=? AND table_no=? AND payment_status=?",
+        "UPDATE orders SET status=?, cleared_by=?, cleared_at=?, version=version+1, updated_at=? WHERE store_id=? AND table_no=? AND payment_status=?",
         OrderStatus.CLOSED.name(),
         clearedBy,
         Timestamp.from(now),
@@ -255,116 +403,281 @@ public class OrderService {
     } else {
       tableService.setStatus(storeId, tableNo, TableStatus.IDLE);
     }
+    outboxService.enqueue("TABLE_UPDATED", tableNo, topics.staff(storeId));
+  }
+
+  private void publishBatch(String storeId, List<OrderDelta> deltas, Set<String> paidIds) {
+    Map<String, List<OrderDelta>> byTable = new LinkedHashMap<>();
+    List<String> paidTables = new ArrayList<>();
+    for (OrderDelta delta : deltas) {
+      byTable.computeIfAbsent(delta.tableNo, key -> new ArrayList<>()).add(delta);
+      if (paidIds.contains(delta.orderId) && !paidTables.contains(delta.tableNo)) {
+        paidTables.add(delta.tableNo);
+      }
+    }
+    tableService.setStatuses(storeId, paidTables, TableStatus.TO_PAY);
+
+    outboxService.enqueue("ORDER_UPDATED", Map.of("orders", deltas), topics.staff(storeId));
+    for (Map.Entry<String, List<OrderDelta>> entry : byTable.entrySet()) {
+      outboxService.enqueue("ORDER_UPDATED", Map.of("orders", entry.getValue()), topics.table(storeId, entry.getKey()));
+    }
+    if (!paidTables.isEmpty()) {
+      outboxService.enqueue("TABLE_UPDATED", paidTables, topics.cashier(storeId));
+    }
+  }
+
+  private String appendGuards(StringBuilder sql, List<Object> args, String storeId, Long version) {
+    if (storeId != null) {
+      sql.append(" AND store_id=?");
+      args.add(storeId);
+    }
+    if (version != null) {
+      sql.append(" AND version=?");
+      args.add(version);
+    }
+    return sql.toString();
+  }
+
+  private OrderDelta requireDelta(String orderId, String storeId, int updated) {
+    List<OrderDelta> rows = jdbcTemplate.query(
+        "SELECT " + DELTA_COLUMNS + " FROM orders WHERE id=?", deltaRowMapper(), orderId);
+    if (rows.isEmpty() || (storeId != null && !storeId.equals(rows.get(0).storeId))) {
+      throw new IllegalArgumentException("Order not found: " + orderId);
+    }
+    OrderDelta delta = rows.get(0);
+    if (updated == 0) {
+      throw new IllegalStateException("Order changed concurrently: status=" + delta.status
+          + ", paymentStatus=" + delta.paymentStatus + ", version=" + delta.version);
+    }
+    return delta;
   }
 
   private Order requireOrder(String id) {
-    List<Order> orders = jdbcTemplate.query(
-        "SELECT * FROM orders WHERE id=?",
-        new Object[] { id },
-        (rs, rowNum) -> {
-          Order order = new Order();
-          order.orderId = rs.getString("id");
-          order.storeId = rs.getString("store_id");
-          order.tableNo = rs.getString("table_no");
-          order.clientId = rs.getString("client_id");
-          order.status = OrderStatus.valueOf(rs.getString("status"));
-          order.paymentStatus = PaymentStatus.valueOf(rs.getString("payment_status"));
-          order.peopleCount = rs.getObject("people_count", Integer.class);
-          order.remark = rs.getString("remark");
-          order.totalAmount = rs.getBigDecimal("total_amount");
-          order.createdAt = rs.getTimestamp("created_at").toInstant();
-          order.updatedAt = rs.getTimestamp("updated_at").toInstant();
-          Timestamp paidAt = rs.getTimestamp("paid_at");
-          order.paidAt = paidAt == null ? null : paidAt.toInstant();
-          order.paidBy = rs.getString("paid_by");
-          Timestamp clearedAt = rs.getTimestamp("cleared_at");
-          order.clearedAt = clearedAt == null ? null : clearedAt.toInstant();
-          order.clearedBy = rs.getString("cleared_by");
-          return order;
-        });
+    List<Order> orders = jdbcTemplate.query("SELECT * FROM orders WHERE id=?", orderRowMapper(), id);
     if (orders.isEmpty()) {
       throw new IllegalArgumentException("Order not found: " + id);
     }
-    Order order = orders.get(0);
-    order.items = loadOrderItems(order.orderId);
-    return order;
+    hydrateItems(orders);
+    return orders.get(0);
   }
 
-  private List<OrderItem> loadOrderItems(String orderId) {
-    List<OrderItem> items = jdbcTemplate.query(
-        "SELECT * FROM order_items WHERE order_id=?",
-        new Object[] { orderId },
-        (rs, rowNum) -> {
-          OrderItem item = new OrderItem();
-          item.id = rs.getLong("id");
-          item.orderId = rs.getString("order_id");
-          item.dishId = rs.getString("dish_id");
-          item.dishName = rs.getString("dish_name");
-          item.qty = rs.getInt("qty");
-          item.unitPrice = rs.getBigDecimal("unit_price");
-          item.lineTotal = rs.getBigDecimal("line_total");
-          item.itemRemark = rs.getString("item_remark");
-          item.selectedOptions = new ArrayList<>();
-          return item;
-        });
-    if (items.isEmpty()) return items;
-    Map<Long, OrderItem> map = new HashMap<>();
-    for (OrderItem item : items) {
-      map.put(item.id, item);
-    }
-    String in = map.keySet().stream().map(id -> "?").collect(Collectors.joining(","));
-    List<Object> args = new ArrayList<>(map.keySet());
-    jdbcTemplate.query(
-        "SELECT * FROM order_item_options WHERE order_item_id IN (" + in + ")",
-        args.toArray(),
-        (rs, rowNum) -> {
-          long itemId = rs.getLong("order_item_id");
-          OrderItem item = map.get(itemId);
-          if (item != null) {
-            SelectedOption option = new SelectedOption();
-            option.groupId = rs.getString("group_id");
-            option.groupName = rs.getString("group_name");
-            option.optionId = rs.getString("option_id");
-            option.optionName = rs.getString("option_name");
-            option.extraPrice = rs.getBigDecimal("extra_price");
-            item.selectedOptions.add(option);
+  private void hydrateItems(List<Order> orders) {
+    if (orders.isEmpty()) return;
+    Map<String, Order> orderMap = new HashMap<>();
+    for (Order order : orders) {
+      order.items = new ArrayList<>();
+      orderMap.put(order.orderId, order);
+    }
+
+    // lines written before options_json existed still keep their options in order_item_options
+    Map<Long, OrderItem> legacyItems = new HashMap<>();
+    for (List<Object> chunk : chunks(new ArrayList<>(orderMap.keySet()))) {
+      jdbcTemplate.query(
+          "SELECT * FROM order_items WHERE order_id IN (" + placeholders(chunk.size()) + ")",
+          rs -> {
+            OrderItem item = new OrderItem();
+            item.id = rs.getLong("id");
+            item.orderId = rs.getString("order_id");
+            item.dishId = rs.getString("dish_id");
+            item.dishName = rs.getString("dish_name");
+            item.qty = rs.getInt("qty");
+            item.unitPrice = Money.of(rs.getBigDecimal("unit_price"));
+            item.lineTotal = Money.of(rs.getBigDecimal("line_total"));
+            item.itemRemark = rs.getString("item_remark");
+            String options = rs.getString("options_json");
+            if (options != null) {
+              item.selectedOptions = optionCodec.decode(options);
+            } else {
+              item.selectedOptions = new ArrayList<>();
+              legacyItems.put(item.id, item);
+            }
+            Order order = orderMap.get(item.orderId);
+            if (order != null) {
+              order.items.add(item);
+            }
+          },
+          chunk.toArray());
+    }
+
+    for (List<Object> chunk : chunks(new ArrayList<>(legacyItems.keySet()))) {
+      jdbcTemplate.query(
+          "SELECT * FROM order_item_options WHERE order_item_id IN (" + placeholders(chunk.size()) + ")",
+          rs -> {
+            OrderItem item = legacyItems.get(rs.getLong("order_item_id"));
+            if (item != null) {
+              SelectedOption option = new SelectedOption();
+              option.groupId = rs.getString("group_id");
+              option.groupName = rs.getString("group_name");
+              option.optionId = rs.getString("option_id");
+              option.optionName = rs.getString("option_name");
+              option.extraPrice = Money.of(rs.getBigDecimal("extra_price"));
+              item.selectedOptions.add(option);
+            }
+          },
+          chunk.toArray());
+    }
+  }
+
+  private RowMapper<OrderDelta> deltaRowMapper() {
+    return (ResultSet rs, int rowNum) -> {
+      OrderDelta delta = new OrderDelta();
+      delta.orderId = rs.getString("id");
+      delta.storeId = rs.getString("store_id");
+      delta.tableNo = rs.getString("table_no");
+      delta.status = OrderStatus.valueOf(rs.getString("status"));
+      delta.paymentStatus = PaymentStatus.valueOf(rs.getString("payment_status"));
+      delta.version = rs.getLong("version");
+      delta.updatedAt = rs.getTimestamp("updated_at").toInstant();
+      return delta;
+    };
+  }
+
+  private RowMapper<Order> orderRowMapper() {
+    return (ResultSet rs, int rowNum) -> {
+      Order order = new Order();
+      order.orderId = rs.getString("id");
+      order.storeId = rs.getString("store_id");
+      order.tableNo = rs.getString("table_no");
+      order.clientId = rs.getString("client_id");
+      order.idempotencyKey = rs.getString("idempotency_key");
+      order.status = OrderStatus.valueOf(rs.getString("status"));
+      order.paymentStatus = PaymentStatus.valueOf(rs.getString("payment_status"));
+      order.peopleCount = rs.getObject("people_count", Integer.class);
+      order.remark = rs.getString("remark");
+      order.totalAmount = Money.of(rs.getBigDecimal("total_amount"));
+      order.discountAmount = Money.of(rs.getBigDecimal("discount_amount"));
+      order.createdAt = rs.getTimestamp("created_at").toInstant();
+      order.updatedAt = rs.getTimestamp("updated_at").toInstant();
+      Timestamp paidAt = rs.getTimestamp("paid_at");
+      order.paidAt = paidAt == null ? null : paidAt.toInstant();
+      order.paidBy = rs.getString("paid_by");
+      Timestamp clearedAt = rs.getTimestamp("cleared_at");
+      order.clearedAt = clearedAt == null ? null : clearedAt.toInstant();
+      order.clearedBy = rs.getString("cleared_by");
+      order.version = rs.getLong("version");
+      return order;
+    };
+  }
+
+  private String encodeCursor(Instant createdAt, String orderId) {
+    String raw = createdAt.toEpochMilli() + ":" + orderId;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private String[] decodeCursor(String cursor) {
+    String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    String[] parts = raw.split(":", 2);
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+    return parts;
+  }
+
+  private static List<List<Object>> chunks(List<?> values) {
+    List<List<Object>> chunks = new ArrayList<>();
+    for (int i = 0; i < values.size(); i += IN_CHUNK) {
+      chunks.add(new ArrayList<>(values.subList(i, Math.min(values.size(), i + IN_CHUNK))));
+    }
+    return chunks;
+  }
+
+  private static String placeholders(int count) {
+    return String.join(",", Collections.nCopies(count, "?"));
+  }
+
+  private void insertOrderItems(List<Order> orders) {
+    List<OrderItem> items = new ArrayList<>();
+    for (Order order : orders) {
+      for (OrderItem item : order.items) {
+        item.orderId = order.orderId;
+        items.add(item);
+      }
+    }
+    if (items.isEmpty()) {
+      return;
+    }
+    // rewriteBatchedStatements turns this into one multi-row INSERT; generated keys come back in row order.
+    KeyHolder keyHolder = new GeneratedKeyHolder();
+    jdbcTemplate.batchUpdate(
+        connection -> connection.prepareStatement(
+            "INSERT INTO order_items (order_id, dish_id, dish_name, qty, unit_price, line_total, item_remark, options_json) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+            Statement.RETURN_GENERATED_KEYS),
+        new BatchPreparedStatementSetter() {
+          @Override
+          public void setValues(PreparedStatement ps, int i) throws SQLException {
+            OrderItem item = items.get(i);
+            ps.setString(1, item.orderId);
+            ps.setString(2, item.dishId);
+            ps.setString(3, item.dishName);
+            ps.setInt(4, item.qty == null ? 0 : item.qty);
+            ps.setBigDecimal(5, (item.unitPrice == null ? Money.ZERO : item.unitPrice).toDecimal());
+            ps.setBigDecimal(6, (item.lineTotal == null ? Money.ZERO : item.lineTotal).toDecimal());
+            ps.setString(7, item.itemRemark);
+            ps.setString(8, optionCodec.encode(item.selectedOptions));
+          }
+
+          @Override
+          public int getBatchSize() {
+            return items.size();
           }
-          return null;
+        },
+        keyHolder);
+
+    List<Map<String, Object>> keys = keyHolder.getKeyList();
+    // option rows hang off these ids, so a missing key must roll the order back rather than write order_item_id=0
+    if (keys.size() != items.size()) {
+      throw new IllegalStateException("Expected " + items.size() + " order item keys, got " + keys.size());
+    }
+    List<Object[]> optionArgs = new ArrayList<>();
+    for (int i = 0; i < items.size(); i++) {
+      OrderItem item = items.get(i);
+      item.id = firstKey(keys.get(i));
+      if (item.id == 0L) {
+        throw new IllegalStateException("Missing generated key for order item " + i);
+      }
+      if (item.selectedOptions == null || !optionCodec.writeRows()) continue;
+      for (SelectedOption option : item.selectedOptions) {
+        optionArgs.add(new Object[] {
+            item.id,
+            option.groupId,
+            option.groupName,
+            option.optionId,
+            option.optionName,
+            (option.extraPrice == null ? Money.ZERO : option.extraPrice).toDecimal()
         });
-    return items;
+      }
+    }
+    if (!optionArgs.isEmpty()) {
+      jdbcTemplate.batchUpdate(
+          "INSERT INTO order_item_options (order_item_id, group_id, group_name, option_id, option_name, extra_price) "
+              + "VALUES (?, ?, ?, ?, ?, ?)",
+          optionArgs);
+    }
   }
 
-  private long insertOrderItem(String orderId, OrderItem item) {
-    KeyHolder keyHolder = new GeneratedKeyHolder();
-    jdbcTemplate.update(connection -> {
-      PreparedStatement ps = connection.prepareStatement(
-          "INSERT INTO order_items (order_id, dish_id, dish_name, qty, unit_price, line_total, item_remark) VALUES (?, ?, ?, ?, ?, ?, ?)",
-          Statement.RETURN_GENERATED_KEYS);
-      ps.setString(1, orderId);
-      ps.setString(2, item.dishId);
-      ps.setString(3, item.dishName);
-      ps.setInt(4, item.qty == null ? 0 : item.qty);
-      ps.setBigDecimal(5, item.unitPrice == null ? BigDecimal.ZERO : item.unitPrice);
-      ps.setBigDecimal(6, item.lineTotal == null ? BigDecimal.ZERO : item.lineTotal);
-      ps.setString(7, item.itemRemark);
-      return ps;
-    }, keyHolder);
-    Number key = keyHolder.getKey();
-    return key == null ? 0L : key.longValue();
+  private long firstKey(Map<String, Object> key) {
+    if (key.isEmpty()) return 0L;
+    Object value = key.values().iterator().next();
+    return value instanceof Number number ? number.longValue() : 0L;
   }
 
-  private BigDecimal calculateTotal(List<OrderItem> items) {
-    if (items == null) {
-      return BigDecimal.ZERO;
+  private Money priceItems(String storeId, List<OrderItem> items) {
+    if (items.isEmpty()) {
+      return Money.ZERO;
     }
-    BigDecimal total = BigDecimal.ZERO;
+    MenuPriceIndex prices = menuService.priceIndex(storeId);
+    long total = 0;
     for (OrderItem item : items) {
-      if (item.lineTotal != null) {
-        total = total.add(item.lineTotal);
-      } else if (item.unitPrice != null && item.qty != null) {
-        total = total.add(item.unitPrice.multiply(BigDecimal.valueOf(item.qty)));
+      if (item.qty == null || item.qty <= 0) {
+        throw new IllegalArgumentException("qty must be positive");
       }
+      // client prices are ignored; the menu is the source of truth
+      item.dishName = prices.dishName(item.dishId);
+      item.unitPrice = prices.unitPrice(item.dishId, item.selectedOptions);
+      item.lineTotal = item.unitPrice.times(item.qty);
+      total = Math.addExact(total, item.lineTotal.minor());
     }
-    return total;
+    return Money.ofMinor(total);
   }
 }
@@ -0,0 +1,260 @@
+package com.smartorder.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartorder.api.dto.WsEvent;
+import com.smartorder.ws.WsPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Component
+public class OutboxDispatcher {
+  private static final Logger log = LoggerFactory.getLogger(OutboxDispatcher.class);
+  private static final int PRUNE_CHUNK = 1000;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final WsPublisher wsPublisher;
+  private final ObjectMapper objectMapper;
+  private final int batchSize;
+  private final Duration retention;
+  private final long leaseMs;
+  private final long retryBackoffMs;
+  private final long maxBackoffMs;
+  private final int maxAttempts;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "outbox-dispatcher");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final AtomicBoolean queued = new AtomicBoolean();
+  private final Timer lag;
+  private final DistributionSummary batches;
+  private final Counter delivered;
+  private final Counter pruned;
+  private final Counter retries;
+  private final Counter parked;
+
+  public OutboxDispatcher(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, WsPublisher wsPublisher,
+                          ObjectMapper objectMapper, MeterRegistry registry,
+                          @Value("${app.outbox.batch-size:100}") int batchSize,
+                          @Value("${app.outbox.retention-hours:24}") long retentionHours,
+                          @Value("${app.outbox.lease-ms:30000}") long leaseMs,
+                          @Value("${app.outbox.retry-backoff-ms:1000}") long retryBackoffMs,
+                          @Value("${app.outbox.max-backoff-ms:60000}") long maxBackoffMs,
+                          @Value("${app.outbox.max-attempts:10}") int maxAttempts) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+    this.wsPublisher = wsPublisher;
+    this.objectMapper = objectMapper;
+    this.batchSize = batchSize;
+    this.retention = Duration.ofHours(retentionHours);
+    this.leaseMs = leaseMs;
+    this.retryBackoffMs = retryBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+    this.maxAttempts = maxAttempts;
+    this.lag = Timer.builder("outbox.dispatch.lag").register(registry);
+    this.batches = DistributionSummary.builder("outbox.dispatch.batch").register(registry);
+    this.delivered = Counter.builder("outbox.dispatch.events").register(registry);
+    this.pruned = Counter.builder("outbox.pruned").register(registry);
+    this.retries = Counter.builder("outbox.dispatch.retries").register(registry);
+    this.parked = Counter.builder("outbox.dispatch.parked").register(registry);
+  }
+
+  public void wake() {
+    if (queued.compareAndSet(false, true)) {
+      executor.execute(this::drain);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:1000}")
+  public void poll() {
+    wake();
+  }
+
+  @Scheduled(cron = "${app.outbox.prune-cron:0 */10 * * * *}")
+  public void prune() {
+    Timestamp cutoff = Timestamp.from(Instant.now().minus(retention));
+    int total = 0;
+    int deleted;
+    do {
+      deleted = jdbcTemplate.update("DELETE FROM outbox_events WHERE delivered_at < ? LIMIT ?", cutoff, PRUNE_CHUNK);
+      total += deleted;
+    } while (deleted == PRUNE_CHUNK);
+    pruned.increment(total);
+    if (total > 0) {
+      log.info("Outbox pruned: rows={} cutoff={}", total, cutoff);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private void drain() {
+    queued.set(false);
+    try {
+      while (drainBatch() == batchSize) {
+        // keep draining while batches come back full
+      }
+    } catch (Exception ex) {
+      log.warn("Outbox drain failed", ex);
+    }
+  }
+
+  // Rows are claimed in a short transaction and published outside it. A row that fails to publish stays pending with a
+  // backoff and holds back the rows after it, so events still go out in id order.
+  private int drainBatch() {
+    List<OutboxRow> rows = claim();
+    if (rows.isEmpty()) {
+      return 0;
+    }
+    Instant now = Instant.now();
+    List<Long> published = new ArrayList<>();
+    OutboxRow failed = null;
+    long failedSeq = 0;
+    for (OutboxRow row : rows) {
+      JsonNode payload;
+      try {
+        payload = objectMapper.readTree(row.payload);
+      } catch (Exception ex) {
+        // never publishable, so park it rather than block the queue behind it
+        log.error("Outbox event unreadable, parked: id={} type={}", row.id, row.type, ex);
+        jdbcTemplate.update("UPDATE outbox_events SET failed_at=?, next_attempt_at=NULL WHERE id=?",
+            Timestamp.from(now), row.id);
+        parked.increment();
+        continue;
+      }
+      // the event id comes from the row and the seq is kept once delivered locally, so a retry re-sends the same
+      // event and nodes that already have it drop the duplicate
+      String[] destinations = row.destinations.split(",");
+      WsEvent event = wsPublisher.event("outbox-" + row.id, row.type, payload, destinations);
+      event.seq = row.seq;
+      boolean local = row.seq > 0;
+      try {
+        if (!local) {
+          wsPublisher.deliver(event, destinations);
+          local = true;
+        }
+        wsPublisher.forward(event, destinations);
+      } catch (Exception ex) {
+        long seq = local ? event.seq : 0;
+        if (row.attempts + 1 >= maxAttempts) {
+          log.error("Outbox publish failed {} times, parked: id={} type={}", row.attempts + 1, row.id, row.type, ex);
+          jdbcTemplate.update(
+              "UPDATE outbox_events SET attempts=attempts+1, seq=?, failed_at=?, next_attempt_at=NULL WHERE id=?",
+              seq, Timestamp.from(Instant.now()), row.id);
+          parked.increment();
+          continue;
+        }
+        log.warn("Outbox publish failed, will retry: id={} type={} attempts={}", row.id, row.type, row.attempts + 1, ex);
+        failed = row;
+        failedSeq = seq;
+        break;
+      }
+      published.add(row.id);
+      lag.record(Duration.between(row.createdAt, now));
+    }
+    if (!published.isEmpty()) {
+      updateIds("UPDATE outbox_events SET delivered_at=?, next_attempt_at=NULL WHERE id IN ", Timestamp.from(Instant.now()),
+          published);
+    }
+    if (failed != null) {
+      long backoff = Math.min(maxBackoffMs, retryBackoffMs << Math.min(failed.attempts, 20));
+      jdbcTemplate.update("UPDATE outbox_events SET attempts=attempts+1, seq=?, next_attempt_at=? WHERE id=?",
+          failedSeq, Timestamp.from(Instant.now().plusMillis(backoff)), failed.id);
+      retries.increment();
+      List<Long> released = new ArrayList<>();
+      for (OutboxRow row : rows.subList(rows.indexOf(failed) + 1, rows.size())) {
+        released.add(row.id);
+      }
+      if (!released.isEmpty()) {
+        updateIds("UPDATE outbox_events SET next_attempt_at=? WHERE id IN ", null, released);
+      }
+    }
+    batches.record(published.size());
+    delivered.increment(published.size());
+    // a short count ends the drain loop; the next wake or poll retries
+    return failed == null ? rows.size() : 0;
+  }
+
+  private List<OutboxRow> claim() {
+    List<OutboxRow> claimed = transactionTemplate.execute(status -> {
+      // plain FOR UPDATE, not SKIP LOCKED: skipping would let another instance publish later rows first
+      List<OutboxRow> rows = jdbcTemplate.query(
+          "SELECT id, type, destinations, payload, created_at, attempts, seq, next_attempt_at FROM outbox_events "
+              + "WHERE delivered_at IS NULL AND failed_at IS NULL ORDER BY id LIMIT ? FOR UPDATE",
+          (rs, rowNum) -> {
+            OutboxRow row = new OutboxRow();
+            row.id = rs.getLong("id");
+            row.type = rs.getString("type");
+            row.destinations = rs.getString("destinations");
+            row.payload = rs.getString("payload");
+            row.createdAt = rs.getTimestamp("created_at").toInstant();
+            row.attempts = rs.getInt("attempts");
+            row.seq = rs.getLong("seq");
+            Timestamp next = rs.getTimestamp("next_attempt_at");
+            row.nextAttemptAt = next == null ? null : next.toInstant();
+            return row;
+          },
+          batchSize);
+      Instant now = Instant.now();
+      List<OutboxRow> due = new ArrayList<>();
+      for (OutboxRow row : rows) {
+        // a row backing off or leased by another dispatcher blocks everything after it
+        if (row.nextAttemptAt != null && row.nextAttemptAt.isAfter(now)) {
+          break;
+        }
+        due.add(row);
+      }
+      if (!due.isEmpty()) {
+        List<Long> ids = new ArrayList<>();
+        for (OutboxRow row : due) {
+          ids.add(row.id);
+        }
+        updateIds("UPDATE outbox_events SET next_attempt_at=? WHERE id IN ", Timestamp.from(now.plusMillis(leaseMs)), ids);
+      }
+      return due;
+    });
+    return claimed == null ? List.of() : claimed;
+  }
+
+  private void updateIds(String sql, Object value, List<Long> ids) {
+    String in = ids.stream().map(id -> "?").collect(Collectors.joining(","));
+    List<Object> args = new ArrayList<>();
+    args.add(value);
+    args.addAll(ids);
+    jdbcTemplate.update(sql + "(" + in + ")", args.toArray());
+  }
+
+  private static class OutboxRow {
+    long id;
+    String type;
+    String destinations;
+    String payload;
+    Instant createdAt;
+    int attempts;
+    long seq;
+    Instant nextAttemptAt;
+  }
+}
@@ -0,0 +1,47 @@
+package com.smartorder.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.Timestamp;
+import java.time.Instant;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@Service
+public class OutboxService {
+  private final JdbcTemplate jdbcTemplate;
+  private final ObjectMapper objectMapper;
+  private final OutboxDispatcher dispatcher;
+
+  public OutboxService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, OutboxDispatcher dispatcher) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.objectMapper = objectMapper;
+    this.dispatcher = dispatcher;
+  }
+
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void enqueue(String type, Object payload, String... destinations) {
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(payload);
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Unserializable outbox payload: " + type, ex);
+    }
+    jdbcTemplate.update(
+        "INSERT INTO outbox_events (type, destinations, payload, created_at) VALUES (?, ?, ?, ?)",
+        type,
+        String.join(",", destinations),
+        json,
+        Timestamp.from(Instant.now()));
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        dispatcher.wake();
+      }
+    });
+  }
+}
@@ -0,0 +1,320 @@
+package com.smartorder.service;
+
+import com.smartorder.model.Order;
+import com.smartorder.model.OrderItem;
+import com.smartorder.model.OrderStatus;
+import com.smartorder.model.PrepBoard;
+import com.smartorder.model.PrepBoardDelta;
+import com.smartorder.model.PrepLine;
+import com.smartorder.model.SelectedOption;
+import com.smartorder.ws.WsPublisher;
+import com.smartorder.ws.WsTopics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@Service
+public class PrepBoardService {
+  private static final Logger log = LoggerFactory.getLogger(PrepBoardService.class);
+  private static final int IN_CHUNK = 500;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final OptionCodec optionCodec;
+  private final WsPublisher wsPublisher;
+  private final WsTopics topics;
+  private final Map<String, StoreBoard> boards = new ConcurrentHashMap<>();
+  private final Counter drift;
+
+  public PrepBoardService(JdbcTemplate jdbcTemplate, OptionCodec optionCodec, WsPublisher wsPublisher,
+                          WsTopics topics, MeterRegistry registry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.optionCodec = optionCodec;
+    this.wsPublisher = wsPublisher;
+    this.topics = topics;
+    this.drift = Counter.builder("kitchen.prepboard.drift").register(registry);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuildAll() {
+    List<String> storeIds = jdbcTemplate.queryForList(
+        "SELECT DISTINCT store_id FROM orders WHERE status IN (?, ?)", String.class,
+        OrderStatus.NEW.name(), OrderStatus.ACCEPTED.name());
+    for (String storeId : storeIds) {
+      board(storeId);
+    }
+    log.info("Prep boards rebuilt: stores={}", storeIds.size());
+  }
+
+  public PrepBoard get(String storeId) {
+    StoreBoard board = board(storeId);
+    synchronized (board) {
+      PrepBoard view = new PrepBoard();
+      view.storeId = storeId;
+      view.version = board.version;
+      for (PrepLine line : board.lines.values()) {
+        view.lines.add(copy(line));
+      }
+      return view;
+    }
+  }
+
+  public void ordersOpened(Collection<Order> orders) {
+    afterCommit(() -> {
+      for (Order order : orders) {
+        StoreBoard board = boards.get(order.storeId);
+        if (board == null) {
+          // not loaded yet; the first read rebuilds from MySQL and picks this order up
+          continue;
+        }
+        synchronized (board) {
+          if (!board.loaded || board.orders.containsKey(order.orderId)) {
+            continue;
+          }
+          List<Contribution> contributions = new ArrayList<>();
+          for (OrderItem item : order.items) {
+            contributions.add(contribution(item.dishId, item.dishName, item.qty, item.selectedOptions));
+          }
+          board.orders.put(order.orderId, contributions);
+          publish(order.storeId, board, apply(board, contributions, 1));
+        }
+      }
+    });
+  }
+
+  public void ordersClosed(String storeId, Collection<String> orderIds) {
+    if (orderIds.isEmpty()) {
+      return;
+    }
+    afterCommit(() -> {
+      StoreBoard board = boards.get(storeId);
+      if (board == null) {
+        return;
+      }
+      synchronized (board) {
+        Set<String> changed = new LinkedHashSet<>();
+        for (String orderId : orderIds) {
+          List<Contribution> contributions = board.orders.remove(orderId);
+          if (contributions != null) {
+            changed.addAll(apply(board, contributions, -1));
+          }
+        }
+        publish(storeId, board, changed);
+      }
+    });
+  }
+
+  @Scheduled(fixedDelayString = "${app.kitchen.prep-board.check-interval-ms:60000}")
+  public void checkConsistency() {
+    for (Map.Entry<String, StoreBoard> entry : boards.entrySet()) {
+      String storeId = entry.getKey();
+      StoreBoard board = entry.getValue();
+      try {
+        synchronized (board) {
+          StoreBoard fresh = new StoreBoard();
+          load(storeId, fresh);
+          Set<String> changed = new LinkedHashSet<>(board.lines.keySet());
+          changed.addAll(fresh.lines.keySet());
+          changed.removeIf(key -> qty(board, key) == qty(fresh, key));
+          board.orders.clear();
+          board.orders.putAll(fresh.orders);
+          board.loaded = true;
+          if (changed.isEmpty()) {
+            continue;
+          }
+          drift.increment();
+          log.warn("Prep board drift repaired: storeId={} lines={}", storeId, changed.size());
+          for (String key : changed) {
+            // lines gone from MySQL go out with qty 0
+            PrepLine line = fresh.lines.containsKey(key) ? copy(fresh.lines.get(key)) : board.lines.get(key);
+            line.qty = qty(fresh, key);
+            board.lines.put(key, line);
+          }
+          publish(storeId, board, changed);
+        }
+      } catch (Exception ex) {
+        log.warn("Prep board check failed: storeId={}", storeId, ex);
+      }
+    }
+  }
+
+  private StoreBoard board(String storeId) {
+    StoreBoard board = boards.computeIfAbsent(storeId, id -> new StoreBoard());
+    synchronized (board) {
+      if (!board.loaded) {
+        load(storeId, board);
+        board.loaded = true;
+      }
+    }
+    return board;
+  }
+
+  private void load(String storeId, StoreBoard board) {
+    List<ItemRow> rows = jdbcTemplate.query(
+        "SELECT oi.id, oi.order_id, oi.dish_id, oi.dish_name, oi.qty, oi.options_json FROM order_items oi "
+            + "JOIN orders o ON o.id = oi.order_id WHERE o.store_id=? AND o.status IN (?, ?) ORDER BY oi.id",
+        (rs, rowNum) -> {
+          ItemRow row = new ItemRow();
+          row.id = rs.getLong("id");
+          row.orderId = rs.getString("order_id");
+          row.dishId = rs.getString("dish_id");
+          row.dishName = rs.getString("dish_name");
+          row.qty = rs.getInt("qty");
+          String json = rs.getString("options_json");
+          row.options = json == null ? null : optionCodec.decode(json);
+          return row;
+        },
+        storeId, OrderStatus.NEW.name(), OrderStatus.ACCEPTED.name());
+    loadLegacyOptions(rows);
+    for (ItemRow row : rows) {
+      Contribution contribution = contribution(row.dishId, row.dishName, row.qty, row.options);
+      board.orders.computeIfAbsent(row.orderId, id -> new ArrayList<>()).add(contribution);
+      apply(board, List.of(contribution), 1);
+    }
+    board.lines.values().removeIf(line -> line.qty <= 0);
+  }
+
+  private void loadLegacyOptions(List<ItemRow> rows) {
+    Map<Long, ItemRow> missing = new HashMap<>();
+    for (ItemRow row : rows) {
+      if (row.options == null) {
+        row.options = new ArrayList<>();
+        missing.put(row.id, row);
+      }
+    }
+    List<Long> ids = new ArrayList<>(missing.keySet());
+    for (int i = 0; i < ids.size(); i += IN_CHUNK) {
+      List<Long> chunk = ids.subList(i, Math.min(ids.size(), i + IN_CHUNK));
+      jdbcTemplate.query(
+          "SELECT order_item_id, option_id, option_name FROM order_item_options WHERE order_item_id IN ("
+              + chunk.stream().map(id -> "?").collect(Collectors.joining(",")) + ")",
+          rs -> {
+            SelectedOption option = new SelectedOption();
+            option.optionId = rs.getString("option_id");
+            option.optionName = rs.getString("option_name");
+            missing.get(rs.getLong("order_item_id")).options.add(option);
+          },
+          chunk.toArray());
+    }
+  }
+
+  private Contribution contribution(String dishId, String dishName, Integer qty, List<SelectedOption> options) {
+    List<SelectedOption> sorted = options == null ? List.of() : options.stream()
+        .sorted(Comparator.comparing(o -> o.optionId == null ? "" : o.optionId))
+        .collect(Collectors.toList());
+    Contribution contribution = new Contribution();
+    contribution.signature = sorted.stream().map(o -> o.optionId == null ? "" : o.optionId).collect(Collectors.joining(","));
+    contribution.key = dishId + "|" + contribution.signature;
+    contribution.dishId = dishId;
+    contribution.dishName = dishName;
+    contribution.options = sorted.stream().map(o -> o.optionName == null ? "" : o.optionName).collect(Collectors.joining(" / "));
+    contribution.qty = qty == null ? 0 : qty;
+    return contribution;
+  }
+
+  private Set<String> apply(StoreBoard board, List<Contribution> contributions, int sign) {
+    Set<String> changed = new LinkedHashSet<>();
+    for (Contribution contribution : contributions) {
+      PrepLine line = board.lines.computeIfAbsent(contribution.key, key -> {
+        PrepLine created = new PrepLine();
+        created.dishId = contribution.dishId;
+        created.dishName = contribution.dishName;
+        created.optionSignature = contribution.signature;
+        created.options = contribution.options;
+        return created;
+      });
+      line.qty += sign * contribution.qty;
+      changed.add(contribution.key);
+    }
+    return changed;
+  }
+
+  private void publish(String storeId, StoreBoard board, Set<String> changed) {
+    if (changed.isEmpty()) {
+      return;
+    }
+    PrepBoardDelta delta = new PrepBoardDelta();
+    delta.storeId = storeId;
+    delta.baseVersion = board.version;
+    delta.version = ++board.version;
+    for (String key : changed) {
+      PrepLine line = board.lines.get(key);
+      delta.lines.add(copy(line));
+      if (line.qty <= 0) {
+        board.lines.remove(key);
+      }
+    }
+    wsPublisher.publish("PREP_BOARD_UPDATED", delta, topics.kitchen(storeId));
+  }
+
+  private void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
+
+  private static int qty(StoreBoard board, String key) {
+    PrepLine line = board.lines.get(key);
+    return line == null ? 0 : Math.max(line.qty, 0);
+  }
+
+  private static PrepLine copy(PrepLine line) {
+    PrepLine copy = new PrepLine();
+    copy.dishId = line.dishId;
+    copy.dishName = line.dishName;
+    copy.optionSignature = line.optionSignature;
+    copy.options = line.options;
+    copy.qty = Math.max(line.qty, 0);
+    return copy;
+  }
+
+  private static class StoreBoard {
+    boolean loaded;
+    long version;
+    final Map<String, PrepLine> lines = new LinkedHashMap<>();
+    final Map<String, List<Contribution>> orders = new HashMap<>();
+  }
+
+  private static class Contribution {
+    String key;
+    String dishId;
+    String dishName;
+    String signature;
+    String options;
+    int qty;
+  }
+
+  private static class ItemRow {
+    long id;
+    String orderId;
+    String dishId;
+    String dishName;
+    int qty;
+    List<SelectedOption> options;
+  }
+}
@@ -0,0 +1,144 @@
+package com.smartorder.service;
+
+import com.smartorder.model.CartItem;
+import com.smartorder.model.CartPricing;
+import com.smartorder.model.Money;
+import com.smartorder.model.Promotion;
+import com.smartorder.model.PromotionKind;
+import com.smartorder.model.TableCart;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PromotionPlan {
+  private static final Rule[] NONE = new Rule[0];
+
+  private final MenuPriceIndex menu;
+  private final Map<String, Rule[]> rulesByDish = new HashMap<>();
+
+  private PromotionPlan(MenuPriceIndex menu) {
+    this.menu = menu;
+  }
+
+  public static PromotionPlan compile(MenuPriceIndex menu, List<Promotion> promotions) {
+    PromotionPlan plan = new PromotionPlan(menu);
+    List<Rule> storeWide = new ArrayList<>();
+    Map<String, List<Rule>> byCategory = new HashMap<>();
+    Map<String, List<Rule>> byDish = new HashMap<>();
+    for (Promotion promotion : promotions) {
+      if (!promotion.active) {
+        continue;
+      }
+      Rule rule = new Rule(promotion);
+      switch (promotion.scope) {
+        case STORE -> storeWide.add(rule);
+        case CATEGORY -> byCategory.computeIfAbsent(promotion.targetId, k -> new ArrayList<>()).add(rule);
+        case DISH -> byDish.computeIfAbsent(promotion.targetId, k -> new ArrayList<>()).add(rule);
+      }
+    }
+    // fold store and category rules onto each dish so a cart line costs one map lookup
+    for (String dishId : menu.dishIds()) {
+      List<Rule> rules = new ArrayList<>(storeWide);
+      rules.addAll(byCategory.getOrDefault(menu.categoryId(dishId), List.of()));
+      rules.addAll(byDish.getOrDefault(dishId, List.of()));
+      if (!rules.isEmpty()) {
+        plan.rulesByDish.put(dishId, rules.toArray(NONE));
+      }
+    }
+    return plan;
+  }
+
+  public MenuPriceIndex menu() {
+    return menu;
+  }
+
+  // each line gets the single best rule active at `now`; rules don't stack
+  public CartPricing apply(TableCart cart, LocalTime now) {
+    CartPricing pricing = new CartPricing();
+    pricing.storeId = cart.storeId;
+    pricing.tableNo = cart.tableNo;
+    pricing.version = cart.version;
+    long subtotal = 0;
+    long discount = 0;
+    for (CartItem line : cart.items) {
+      long unitPrice = line.unitPrice == null ? 0 : line.unitPrice.minor();
+      int qty = line.qty == null ? 0 : line.qty;
+      subtotal = Math.addExact(subtotal, Math.multiplyExact(unitPrice, qty));
+      Rule best = null;
+      long bestOff = 0;
+      for (Rule rule : rulesByDish.getOrDefault(line.dishId, NONE)) {
+        if (!rule.activeAt(now)) {
+          continue;
+        }
+        long off = rule.discount(unitPrice, qty);
+        if (off > bestOff) {
+          best = rule;
+          bestOff = off;
+        }
+      }
+      if (best != null) {
+        discount += bestOff;
+        CartPricing.LineDiscount applied = new CartPricing.LineDiscount();
+        applied.itemId = line.id;
+        applied.dishId = line.dishId;
+        applied.optionSignature = line.optionSignature;
+        applied.promotionId = best.id;
+        applied.promotionName = best.name;
+        applied.amount = Money.ofMinor(bestOff);
+        pricing.discounts.add(applied);
+      }
+    }
+    pricing.subtotal = Money.ofMinor(subtotal);
+    pricing.discount = Money.ofMinor(discount);
+    pricing.total = Money.ofMinor(subtotal - discount);
+    return pricing;
+  }
+
+  private static class Rule {
+    final String id;
+    final String name;
+    final PromotionKind kind;
+    final int percentOff;
+    final long amountOff;
+    final int nth;
+    final LocalTime startTime;
+    final LocalTime endTime;
+
+    Rule(Promotion promotion) {
+      this.id = promotion.id;
+      this.name = promotion.name;
+      this.kind = promotion.kind;
+      this.percentOff = promotion.percentOff == null ? 0 : promotion.percentOff;
+      this.amountOff = promotion.amountOff == null ? 0 : promotion.amountOff.minor();
+      this.nth = promotion.nth == null ? 1 : promotion.nth;
+      this.startTime = promotion.startTime;
+      this.endTime = promotion.endTime;
+    }
+
+    boolean activeAt(LocalTime now) {
+      if (startTime == null || endTime == null) {
+        return true;
+      }
+      if (startTime.isBefore(endTime)) {
+        return !now.isBefore(startTime) && now.isBefore(endTime);
+      }
+      // window crosses midnight
+      return !now.isBefore(startTime) || now.isBefore(endTime);
+    }
+
+    long discount(long unitPrice, int qty) {
+      return switch (kind) {
+        case PERCENT_OFF -> percentOf(unitPrice * qty, percentOff);
+        case AMOUNT_OFF -> Math.min(amountOff, unitPrice) * qty;
+        case NTH_ITEM_PERCENT_OFF -> percentOf(unitPrice * (qty / nth), percentOff);
+      };
+    }
+
+    private static long percentOf(long amount, int percent) {
+      // half-up to the cent
+      return (amount * percent + 50) / 100;
+    }
+  }
+}
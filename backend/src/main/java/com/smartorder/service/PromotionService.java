@@ -0,0 +1,127 @@
+package com.smartorder.service;
+
+import com.smartorder.model.CartPricing;
+import com.smartorder.model.Money;
+import com.smartorder.model.Promotion;
+import com.smartorder.model.PromotionKind;
+import com.smartorder.model.PromotionScope;
+import com.smartorder.model.TableCart;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+@Service
+public class PromotionService {
+  private final JdbcTemplate jdbcTemplate;
+  private final MenuService menuService;
+  private final ZoneId zone;
+  private final Map<String, PromotionPlan> plans = new ConcurrentHashMap<>();
+
+  public PromotionService(JdbcTemplate jdbcTemplate, MenuService menuService,
+                          @Value("${app.promotions.zone:}") String zone) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.menuService = menuService;
+    this.zone = zone == null || zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone);
+  }
+
+  public List<Promotion> list(String storeId) {
+    return jdbcTemplate.query(
+        "SELECT * FROM promotions WHERE store_id=? ORDER BY created_at", promotionRowMapper(), storeId);
+  }
+
+  public Promotion create(String storeId, Promotion promotion) {
+    validate(promotion);
+    promotion.id = UUID.randomUUID().toString();
+    promotion.storeId = storeId;
+    jdbcTemplate.update(
+        "INSERT INTO promotions (id, store_id, name, kind, scope, target_id, percent_off, amount_off, nth, "
+            + "start_time, end_time, active) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        promotion.id,
+        storeId,
+        promotion.name,
+        promotion.kind.name(),
+        promotion.scope.name(),
+        promotion.scope == PromotionScope.STORE ? null : promotion.targetId,
+        promotion.percentOff,
+        promotion.amountOff == null ? null : promotion.amountOff.toDecimal(),
+        promotion.nth,
+        promotion.startTime,
+        promotion.endTime,
+        promotion.active);
+    plans.remove(storeId);
+    return promotion;
+  }
+
+  public boolean delete(String storeId, String promotionId) {
+    int deleted = jdbcTemplate.update("DELETE FROM promotions WHERE id=? AND store_id=?", promotionId, storeId);
+    plans.remove(storeId);
+    return deleted > 0;
+  }
+
+  public CartPricing price(TableCart cart) {
+    return plan(cart.storeId).apply(cart, LocalTime.now(zone));
+  }
+
+  private PromotionPlan plan(String storeId) {
+    MenuPriceIndex menu = menuService.priceIndex(storeId);
+    PromotionPlan plan = plans.get(storeId);
+    // a new price index means the menu was reloaded, so dish and category targets are resolved again
+    if (plan == null || plan.menu() != menu) {
+      plan = PromotionPlan.compile(menu, jdbcTemplate.query(
+          "SELECT * FROM promotions WHERE store_id=? AND active=1", promotionRowMapper(), storeId));
+      plans.put(storeId, plan);
+    }
+    return plan;
+  }
+
+  private void validate(Promotion promotion) {
+    if (promotion.name == null || promotion.name.isBlank()) {
+      throw new IllegalArgumentException("name is required");
+    }
+    if (promotion.kind == null || promotion.scope == null) {
+      throw new IllegalArgumentException("kind and scope are required");
+    }
+    if (promotion.scope != PromotionScope.STORE && (promotion.targetId == null || promotion.targetId.isBlank())) {
+      throw new IllegalArgumentException("targetId is required for " + promotion.scope);
+    }
+    if (promotion.kind == PromotionKind.AMOUNT_OFF) {
+      if (promotion.amountOff == null || promotion.amountOff.compareTo(Money.ZERO) <= 0) {
+        throw new IllegalArgumentException("amountOff must be positive");
+      }
+    } else if (promotion.percentOff == null || promotion.percentOff < 1 || promotion.percentOff > 100) {
+      throw new IllegalArgumentException("percentOff must be between 1 and 100");
+    }
+    if (promotion.kind == PromotionKind.NTH_ITEM_PERCENT_OFF && (promotion.nth == null || promotion.nth < 2)) {
+      throw new IllegalArgumentException("nth must be at least 2");
+    }
+    if ((promotion.startTime == null) != (promotion.endTime == null)) {
+      throw new IllegalArgumentException("startTime and endTime go together");
+    }
+  }
+
+  private RowMapper<Promotion> promotionRowMapper() {
+    return (rs, rowNum) -> {
+      Promotion promotion = new Promotion();
+      promotion.id = rs.getString("id");
+      promotion.storeId = rs.getString("store_id");
+      promotion.name = rs.getString("name");
+      promotion.kind = PromotionKind.valueOf(rs.getString("kind"));
+      promotion.scope = PromotionScope.valueOf(rs.getString("scope"));
+      promotion.targetId = rs.getString("target_id");
+      promotion.percentOff = rs.getObject("percent_off", Integer.class);
+      promotion.amountOff = Money.of(rs.getBigDecimal("amount_off"));
+      promotion.nth = rs.getObject("nth", Integer.class);
+      promotion.startTime = rs.getObject("start_time", LocalTime.class);
+      promotion.endTime = rs.getObject("end_time", LocalTime.class);
+      promotion.active = rs.getBoolean("active");
+      return promotion;
+    };
+  }
+}
@@ -0,0 +1,318 @@
+package com.smartorder.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartorder.model.CartDelta;
+import com.smartorder.model.CartItem;
+import com.smartorder.model.Money;
+import com.smartorder.model.TableCart;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+
+@Repository
+@Primary
+@ConditionalOnProperty(name = "app.cart.store", havingValue = "redis")
+public class RedisCartStore implements CartStore {
+  private static final Logger log = LoggerFactory.getLogger(RedisCartStore.class);
+
+  @SuppressWarnings("rawtypes")
+  private static final DefaultRedisScript<List> ADD_SCRIPT = new DefaultRedisScript<>(
+      "if redis.call('EXISTS', KEYS[1]) == 0 then return false end "
+          + "if redis.call('HSETNX', KEYS[1], 'line:' .. ARGV[1], ARGV[2]) == 1 then "
+          + "redis.call('HSET', KEYS[1], 'id:' .. ARGV[1], redis.call('HINCRBY', KEYS[1], 'seq', 1)) end "
+          + "local qty = redis.call('HINCRBY', KEYS[1], 'qty:' .. ARGV[1], ARGV[3]) "
+          + "local ver = redis.call('HINCRBY', KEYS[1], 'ver', 1) "
+          + "redis.call('PEXPIRE', KEYS[1], ARGV[4]) "
+          + "return {qty, ver, tonumber(redis.call('HGET', KEYS[1], 'id:' .. ARGV[1]))}",
+      List.class);
+
+  private static final DefaultRedisScript<Long> SET_QTY_SCRIPT = new DefaultRedisScript<>(
+      "if redis.call('EXISTS', KEYS[1]) == 0 then return false end "
+          + "if redis.call('HEXISTS', KEYS[1], 'line:' .. ARGV[1]) == 0 or tonumber(ARGV[2]) <= 0 then "
+          + "redis.call('HDEL', KEYS[1], 'line:' .. ARGV[1], 'qty:' .. ARGV[1], 'id:' .. ARGV[1]) "
+          + "else redis.call('HSET', KEYS[1], 'qty:' .. ARGV[1], ARGV[2]) end "
+          + "local ver = redis.call('HINCRBY', KEYS[1], 'ver', 1) "
+          + "redis.call('PEXPIRE', KEYS[1], ARGV[3]) "
+          + "return ver",
+      Long.class);
+
+  private static final DefaultRedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>(
+      "if redis.call('EXISTS', KEYS[1]) == 0 then return false end "
+          + "redis.call('HDEL', KEYS[1], 'line:' .. ARGV[1], 'qty:' .. ARGV[1], 'id:' .. ARGV[1]) "
+          + "local ver = redis.call('HINCRBY', KEYS[1], 'ver', 1) "
+          + "redis.call('PEXPIRE', KEYS[1], ARGV[2]) "
+          + "return ver",
+      Long.class);
+
+  private static final DefaultRedisScript<Long> CLEAR_SCRIPT = new DefaultRedisScript<>(
+      "local ver = redis.call('HINCRBY', KEYS[1], 'ver', 1) "
+          + "local seq = redis.call('HGET', KEYS[1], 'seq') "
+          + "redis.call('DEL', KEYS[1]) "
+          + "redis.call('HSET', KEYS[1], 'ver', ver) "
+          + "if seq then redis.call('HSET', KEYS[1], 'seq', seq) end "
+          + "redis.call('PEXPIRE', KEYS[1], ARGV[1]) "
+          + "return ver",
+      Long.class);
+
+  // moves every line out of the hash in one step, so a checkout owns exactly what it read
+  @SuppressWarnings("rawtypes")
+  private static final DefaultRedisScript<List> TAKE_SCRIPT = new DefaultRedisScript<>(
+      "if redis.call('EXISTS', KEYS[1]) == 0 then return false end "
+          + "local fields = redis.call('HGETALL', KEYS[1]) "
+          + "local taken = {} "
+          + "for i = 1, #fields, 2 do "
+          + "local f = fields[i] "
+          + "if string.sub(f, 1, 5) == 'line:' or string.sub(f, 1, 4) == 'qty:' or string.sub(f, 1, 3) == 'id:' then "
+          + "taken[#taken + 1] = f taken[#taken + 1] = fields[i + 1] end end "
+          + "if #taken == 0 then return {} end "
+          + "for i = 1, #taken, 2 do redis.call('HDEL', KEYS[1], taken[i]) end "
+          + "local ver = redis.call('HINCRBY', KEYS[1], 'ver', 1) "
+          + "redis.call('PEXPIRE', KEYS[1], ARGV[1]) "
+          + "table.insert(taken, 1, ver) "
+          + "return taken",
+      List.class);
+
+  // loads a cart back from its MySQL snapshot, unless another call already recreated the key
+  private static final DefaultRedisScript<Long> SEED_SCRIPT = new DefaultRedisScript<>(
+      "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end "
+          + "for i = 2, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+          + "redis.call('PEXPIRE', KEYS[1], ARGV[1]) "
+          + "return 1",
+      Long.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final ObjectMapper objectMapper;
+  private final JdbcCartStore jdbcStore;
+  private final long ttlMillis;
+  private final boolean snapshot;
+  private final Set<List<String>> dirty = ConcurrentHashMap.newKeySet();
+
+  public RedisCartStore(StringRedisTemplate redisTemplate, ObjectMapper objectMapper, JdbcCartStore jdbcStore,
+                        @Value("${app.cart.redis.ttl-minutes:240}") long ttlMinutes,
+                        @Value("${app.cart.redis.snapshot:true}") boolean snapshot) {
+    this.redisTemplate = redisTemplate;
+    this.objectMapper = objectMapper;
+    this.jdbcStore = jdbcStore;
+    this.ttlMillis = ttlMinutes * 60_000;
+    this.snapshot = snapshot;
+  }
+
+  @Override
+  public TableCart get(String storeId, String tableNo) {
+    Map<Object, Object> hash = redisTemplate.opsForHash().entries(cartKey(storeId, tableNo));
+    if (hash.isEmpty()) {
+      hydrate(storeId, tableNo);
+      hash = redisTemplate.opsForHash().entries(cartKey(storeId, tableNo));
+    }
+    return toCart(storeId, tableNo, hash);
+  }
+
+  @Override
+  public TableCart take(String storeId, String tableNo) {
+    List<?> result = hydrated(storeId, tableNo,
+        () -> redisTemplate.execute(TAKE_SCRIPT, List.of(cartKey(storeId, tableNo)), String.valueOf(ttlMillis)));
+    if (result.isEmpty()) {
+      return toCart(storeId, tableNo, Map.of());
+    }
+    markDirty(storeId, tableNo);
+    Map<Object, Object> hash = new HashMap<>();
+    for (int i = 1; i + 1 < result.size(); i += 2) {
+      hash.put(result.get(i), result.get(i + 1));
+    }
+    TableCart cart = toCart(storeId, tableNo, hash);
+    cart.version = ((Number) result.get(0)).longValue();
+    return cart;
+  }
+
+  private TableCart toCart(String storeId, String tableNo, Map<Object, Object> hash) {
+    Map<String, Integer> qtys = new HashMap<>();
+    Map<String, Long> ids = new HashMap<>();
+    long version = 0;
+    for (Map.Entry<Object, Object> entry : hash.entrySet()) {
+      String field = (String) entry.getKey();
+      if (field.startsWith("qty:")) {
+        qtys.put(field.substring(4), Integer.parseInt((String) entry.getValue()));
+      } else if (field.startsWith("id:")) {
+        ids.put(field.substring(3), Long.parseLong((String) entry.getValue()));
+      } else if (field.equals("ver")) {
+        version = Long.parseLong((String) entry.getValue());
+      }
+    }
+    List<CartItem> items = new ArrayList<>();
+    for (Map.Entry<Object, Object> entry : hash.entrySet()) {
+      String field = (String) entry.getKey();
+      if (!field.startsWith("line:")) continue;
+      String line = field.substring(5);
+      try {
+        CartItem item = objectMapper.readValue((String) entry.getValue(), CartItem.class);
+        item.id = ids.get(line);
+        item.qty = qtys.getOrDefault(line, 0);
+        items.add(item);
+      } catch (Exception ex) {
+        log.warn("Skipping unreadable cart line: store={} table={} line={}", storeId, tableNo, line, ex);
+      }
+    }
+    items.sort(Comparator.comparing(item -> item.id == null ? Long.MAX_VALUE : item.id));
+    TableCart cart = new TableCart();
+    cart.storeId = storeId;
+    cart.tableNo = tableNo;
+    cart.version = version;
+    cart.items = items;
+    return cart;
+  }
+
+  @Override
+  public CartDelta addItem(String storeId, String tableNo, CartItem item) {
+    CartItem line = new CartItem();
+    line.dishId = item.dishId;
+    line.dishName = item.dishName;
+    line.unitPrice = item.unitPrice == null ? Money.ZERO : item.unitPrice;
+    line.optionSignature = item.optionSignature;
+    line.selectedOptions = item.selectedOptions == null ? new ArrayList<>() : item.selectedOptions;
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(line);
+    } catch (Exception ex) {
+      throw new IllegalStateException("Unable to serialize cart line", ex);
+    }
+    List<?> result = hydrated(storeId, tableNo, () -> redisTemplate.execute(ADD_SCRIPT, List.of(cartKey(storeId, tableNo)),
+        lineKey(item.dishId, item.optionSignature), json, String.valueOf(item.qty), String.valueOf(ttlMillis)));
+    markDirty(storeId, tableNo);
+    line.qty = ((Number) result.get(0)).intValue();
+    line.id = ((Number) result.get(2)).longValue();
+    CartDelta delta = new CartDelta(storeId, tableNo, ((Number) result.get(1)).longValue());
+    delta.items.add(line);
+    return delta;
+  }
+
+  @Override
+  public CartDelta updateQty(String storeId, String tableNo, String dishId, String optionSignature, int qty) {
+    Long version = hydrated(storeId, tableNo, () -> redisTemplate.execute(SET_QTY_SCRIPT,
+        List.of(cartKey(storeId, tableNo)), lineKey(dishId, optionSignature), String.valueOf(qty), String.valueOf(ttlMillis)));
+    markDirty(storeId, tableNo);
+    CartDelta delta = new CartDelta(storeId, tableNo, version);
+    delta.items.add(partialLine(dishId, optionSignature, Math.max(qty, 0)));
+    return delta;
+  }
+
+  @Override
+  public CartDelta removeItem(String storeId, String tableNo, String dishId, String optionSignature) {
+    Long version = hydrated(storeId, tableNo, () -> redisTemplate.execute(REMOVE_SCRIPT,
+        List.of(cartKey(storeId, tableNo)), lineKey(dishId, optionSignature), String.valueOf(ttlMillis)));
+    markDirty(storeId, tableNo);
+    CartDelta delta = new CartDelta(storeId, tableNo, version);
+    delta.items.add(partialLine(dishId, optionSignature, 0));
+    return delta;
+  }
+
+  @Override
+  public CartDelta clear(String storeId, String tableNo) {
+    Long version = redisTemplate.execute(CLEAR_SCRIPT, List.of(cartKey(storeId, tableNo)), String.valueOf(ttlMillis));
+    markDirty(storeId, tableNo);
+    CartDelta delta = new CartDelta(storeId, tableNo, version);
+    delta.cleared = true;
+    return delta;
+  }
+
+  @Scheduled(fixedDelayString = "${app.cart.redis.snapshot-interval-ms:5000}")
+  public void snapshot() {
+    if (!snapshot || dirty.isEmpty()) return;
+    for (List<String> table : new ArrayList<>(dirty)) {
+      dirty.remove(table);
+      try {
+        TableCart cart = get(table.get(0), table.get(1));
+        jdbcStore.replace(cart.storeId, cart.tableNo, cart.items);
+      } catch (Exception ex) {
+        dirty.add(table);
+        log.warn("Cart snapshot failed: store={} table={}", table.get(0), table.get(1), ex);
+      }
+    }
+  }
+
+  // The scripts above return nil when the hash is gone (TTL or a Redis restart), so the cart is reloaded from its MySQL
+  // snapshot and the change re-run instead of starting an empty hash that the next snapshot would write back.
+  private <T> T hydrated(String storeId, String tableNo, Supplier<T> script) {
+    T result = script.get();
+    if (result != null) {
+      return result;
+    }
+    hydrate(storeId, tableNo);
+    result = script.get();
+    if (result == null) {
+      throw new IllegalStateException("Cart store unavailable");
+    }
+    return result;
+  }
+
+  private void hydrate(String storeId, String tableNo) {
+    List<CartItem> items = snapshot ? jdbcStore.get(storeId, tableNo).items : List.of();
+    List<String> args = new ArrayList<>();
+    args.add(String.valueOf(ttlMillis));
+    long seq = 0;
+    for (CartItem item : items) {
+      CartItem line = new CartItem();
+      line.dishId = item.dishId;
+      line.dishName = item.dishName;
+      line.unitPrice = item.unitPrice == null ? Money.ZERO : item.unitPrice;
+      line.optionSignature = item.optionSignature;
+      line.selectedOptions = item.selectedOptions == null ? new ArrayList<>() : item.selectedOptions;
+      String key = lineKey(item.dishId, item.optionSignature);
+      try {
+        args.add("line:" + key);
+        args.add(objectMapper.writeValueAsString(line));
+      } catch (Exception ex) {
+        throw new IllegalStateException("Unable to serialize cart line", ex);
+      }
+      args.add("qty:" + key);
+      args.add(String.valueOf(item.qty));
+      args.add("id:" + key);
+      args.add(String.valueOf(++seq));
+    }
+    args.add("seq");
+    args.add(String.valueOf(seq));
+    // seeded from the clock so versions keep moving forward past whatever clients saw before the key was lost
+    args.add("ver");
+    args.add(String.valueOf(System.currentTimeMillis()));
+    Long seeded = redisTemplate.execute(SEED_SCRIPT, List.of(cartKey(storeId, tableNo)), args.toArray(new Object[0]));
+    if (seeded != null && seeded == 1) {
+      log.info("Cart reloaded from snapshot: store={} table={} lines={}", storeId, tableNo, items.size());
+    }
+  }
+
+  private CartItem partialLine(String dishId, String optionSignature, int qty) {
+    CartItem line = new CartItem();
+    line.dishId = dishId;
+    line.optionSignature = optionSignature == null ? "" : optionSignature;
+    line.qty = qty;
+    line.selectedOptions = null;
+    return line;
+  }
+
+  private void markDirty(String storeId, String tableNo) {
+    if (snapshot) {
+      dirty.add(List.of(storeId, tableNo));
+    }
+  }
+
+  private String cartKey(String storeId, String tableNo) {
+    return "cart:" + storeId + ":" + tableNo;
+  }
+
+  private String lineKey(String dishId, String optionSignature) {
+    return dishId + "|" + (optionSignature == null ? "" : optionSignature);
+  }
+}
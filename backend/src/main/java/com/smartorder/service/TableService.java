@@ -4,6 +4,7 @@ import com.smartorder.model.TableInfo;
 import com.smartorder.model.TableStatus;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -35,10 +36,18 @@ public class TableService {
   }
 
   public void setStatus(String storeId, String tableNo, TableStatus status) {
-    getOrCreate(storeId, tableNo);
-    jdbcTemplate.update(
-        "UPDATE tables SET status=? WHERE store_id=? AND table_no=?",
-        status.name(), storeId, tableNo);
+    setStatuses(storeId, List.of(tableNo), status);
+  }
+
+  public void setStatuses(String storeId, List<String> tableNos, TableStatus status) {
+    if (tableNos.isEmpty()) return;
+    List<Object[]> args = new ArrayList<>();
+    for (String tableNo : tableNos) {
+      args.add(new Object[] { storeId, tableNo, status.name() });
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO tables (store_id, table_no, status) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE status=VALUES(status)",
+        args);
   }
 
   public List<TableInfo> listByStore(String storeId) {
@@ -16,6 +16,7 @@ public class CorsConfig implements WebMvcConfigurer {
         .allowedOrigins(allowedOrigins.split(","))
         .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS")
         .allowedHeaders("*")
+        .exposedHeaders("X-Next-Cursor")
         .allowCredentials(false);
   }
 }
@@ -0,0 +1,13 @@
+package com.smartorder.ws;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "app.ws.relay", havingValue = "local", matchIfMissing = true)
+public class LocalWsRelay implements WsRelay {
+  @Override
+  public void forward(WsEnvelope envelope) {
+    // single node: local delivery already happened in WsPublisher
+  }
+}
@@ -0,0 +1,21 @@
+package com.smartorder.ws;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RecentIds {
+  private final Map<String, Boolean> ids;
+
+  public RecentIds(int capacity) {
+    this.ids = new LinkedHashMap<>(capacity * 2, 0.75f, false) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  public synchronized boolean add(String id) {
+    return ids.put(id, Boolean.TRUE) == null;
+  }
+}
@@ -0,0 +1,71 @@
+package com.smartorder.ws;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "app.ws.relay", havingValue = "redis")
+public class RedisWsRelay implements WsRelay, MessageListener {
+  private static final Logger log = LoggerFactory.getLogger(RedisWsRelay.class);
+
+  private final StringRedisTemplate redisTemplate;
+  private final WsDelivery delivery;
+  private final ObjectMapper objectMapper;
+  private final WsNode node;
+  private final String channel;
+  private final RecentIds seen;
+
+  public RedisWsRelay(StringRedisTemplate redisTemplate, WsDelivery delivery, ObjectMapper objectMapper,
+                      WsNode node,
+                      @Value("${app.ws.redis-channel:ws:events}") String channel,
+                      @Value("${app.ws.dedupe-window:4096}") int dedupeWindow) {
+    this.redisTemplate = redisTemplate;
+    this.delivery = delivery;
+    this.objectMapper = objectMapper;
+    this.node = node;
+    this.channel = channel;
+    this.seen = new RecentIds(dedupeWindow);
+  }
+
+  public String channel() {
+    return channel;
+  }
+
+  @Override
+  public void forward(WsEnvelope envelope) {
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(envelope);
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Unserializable WS envelope: " + envelope.event.type, ex);
+    }
+    redisTemplate.convertAndSend(channel, json);
+  }
+
+  @Override
+  public void onMessage(Message message, byte[] pattern) {
+    WsEnvelope envelope;
+    try {
+      envelope = objectMapper.readValue(new String(message.getBody(), StandardCharsets.UTF_8), WsEnvelope.class);
+    } catch (Exception ex) {
+      log.warn("WS relay dropped unreadable message on channel={}", channel);
+      return;
+    }
+    if (envelope.event == null || node.id().equals(envelope.origin)) {
+      return;
+    }
+    if (envelope.event.eventId != null && !seen.add(envelope.event.eventId)) {
+      return;
+    }
+    delivery.deliver(envelope.event, envelope.destinations);
+  }
+}
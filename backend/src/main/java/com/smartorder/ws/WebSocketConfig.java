@@ -2,6 +2,7 @@ package com.smartorder.ws;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
@@ -16,6 +17,12 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
   @Value("${app.ws.topic-prefix:/topic}")
   private String topicPrefix;
 
+  private final WsSubscriptionInterceptor subscriptionInterceptor;
+
+  public WebSocketConfig(WsSubscriptionInterceptor subscriptionInterceptor) {
+    this.subscriptionInterceptor = subscriptionInterceptor;
+  }
+
   @Override
   public void registerStompEndpoints(StompEndpointRegistry registry) {
     registry.addEndpoint(wsEndpoint).setAllowedOriginPatterns("*").withSockJS();
@@ -23,7 +30,12 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
   @Override
   public void configureMessageBroker(MessageBrokerRegistry registry) {
-    registry.enableSimpleBroker(topicPrefix);
+    registry.enableSimpleBroker(topicPrefix, "/queue");
     registry.setApplicationDestinationPrefixes("/app");
   }
+
+  @Override
+  public void configureClientInboundChannel(ChannelRegistration registration) {
+    registration.interceptors(subscriptionInterceptor);
+  }
 }
@@ -0,0 +1,45 @@
+package com.smartorder.ws;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartorder.api.dto.WsEvent;
+import java.util.List;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+@Component
+public class WsDelivery {
+  private final SimpMessagingTemplate template;
+  private final ObjectMapper objectMapper;
+  private final WsReplayBuffer replayBuffer;
+
+  public WsDelivery(SimpMessagingTemplate template, ObjectMapper objectMapper, WsReplayBuffer replayBuffer) {
+    this.template = template;
+    this.objectMapper = objectMapper;
+    this.replayBuffer = replayBuffer;
+  }
+
+  public void deliver(WsEvent event, List<String> destinations) {
+    byte[] body;
+    try {
+      body = objectMapper.writeValueAsBytes(event);
+    } catch (JsonProcessingException ex) {
+      throw new IllegalStateException("Unserializable WS event: " + event.type, ex);
+    }
+    replayBuffer.append(event.storeId, event.seq, destinations, body);
+    for (String destination : destinations) {
+      send(destination, body);
+    }
+  }
+
+  public void send(String destination, byte[] body) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+    accessor.setLeaveMutable(true);
+    template.send(destination, MessageBuilder.createMessage(body, accessor.getMessageHeaders()));
+  }
+}
@@ -0,0 +1,11 @@
+package com.smartorder.ws;
+
+import com.smartorder.api.dto.WsEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+public class WsEnvelope {
+  public String origin;
+  public List<String> destinations = new ArrayList<>();
+  public WsEvent event;
+}
@@ -0,0 +1,18 @@
+package com.smartorder.ws;
+
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WsNode {
+  private final String id;
+
+  public WsNode(@Value("${app.ws.node-id:}") String id) {
+    this.id = id == null || id.isBlank() ? UUID.randomUUID().toString() : id;
+  }
+
+  public String id() {
+    return id;
+  }
+}
@@ -1,18 +1,73 @@
 package com.smartorder.ws;
 
 import com.smartorder.api.dto.WsEvent;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 @Service
 public class WsPublisher {
-  private final SimpMessagingTemplate template;
+  private static final Logger log = LoggerFactory.getLogger(WsPublisher.class);
 
-  public WsPublisher(SimpMessagingTemplate template) {
-    this.template = template;
+  private final WsDelivery delivery;
+  private final WsRelay relay;
+  private final WsNode node;
+  private final WsTopics topics;
+  private final WsSequence sequence;
+  private final Map<String, Object> storeLocks = new ConcurrentHashMap<>();
+
+  public WsPublisher(WsDelivery delivery, WsRelay relay, WsNode node, WsTopics topics, WsSequence sequence) {
+    this.delivery = delivery;
+    this.relay = relay;
+    this.node = node;
+    this.topics = topics;
+    this.sequence = sequence;
+  }
+
+  // best effort: a relay failure is logged, callers that need to retry use deliver/forward directly
+  public void publish(String type, Object payload, String... destinations) {
+    WsEvent event = event(UUID.randomUUID().toString(), type, payload, destinations);
+    deliver(event, destinations);
+    try {
+      forward(event, destinations);
+    } catch (RuntimeException ex) {
+      log.warn("WS relay publish failed: eventId={} type={}", event.eventId, event.type, ex);
+    }
+  }
+
+  public WsEvent event(String eventId, String type, Object payload, String... destinations) {
+    WsEvent event = new WsEvent(type, payload);
+    event.eventId = eventId;
+    WsTopics.Route route = destinations.length == 0 ? null : topics.parse(destinations[0]);
+    if (route != null) {
+      event.storeId = route.storeId;
+    }
+    return event;
+  }
+
+  // delivers to this node's sessions, numbering the event first if it has no seq yet
+  public void deliver(WsEvent event, String... destinations) {
+    List<String> targets = List.of(destinations);
+    if (event.storeId == null || event.seq > 0) {
+      delivery.deliver(event, targets);
+      return;
+    }
+    // numbering and local delivery happen together so this node's broker sees a store's events in seq order
+    synchronized (storeLocks.computeIfAbsent(event.storeId, id -> new Object())) {
+      event.seq = sequence.next(event.storeId);
+      delivery.deliver(event, targets);
+    }
   }
 
-  public void publish(String type, Object payload) {
-    template.convertAndSend("/topic/events", new WsEvent(type, payload));
+  public void forward(WsEvent event, String... destinations) {
+    WsEnvelope envelope = new WsEnvelope();
+    envelope.origin = node.id();
+    envelope.destinations = List.of(destinations);
+    envelope.event = event;
+    relay.forward(envelope);
   }
 }
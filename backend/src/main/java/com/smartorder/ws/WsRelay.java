@@ -0,0 +1,5 @@
+package com.smartorder.ws;
+
+public interface WsRelay {
+  void forward(WsEnvelope envelope);
+}
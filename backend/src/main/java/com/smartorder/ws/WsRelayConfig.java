@@ -0,0 +1,20 @@
+package com.smartorder.ws;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+public class WsRelayConfig {
+  @Bean
+  @ConditionalOnProperty(name = "app.ws.relay", havingValue = "redis")
+  public RedisMessageListenerContainer wsRelayListenerContainer(RedisConnectionFactory connectionFactory, RedisWsRelay relay) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(connectionFactory);
+    container.addMessageListener(relay, new ChannelTopic(relay.channel()));
+    return container;
+  }
+}
@@ -0,0 +1,112 @@
+package com.smartorder.ws;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WsReplayBuffer {
+  private final int maxEvents;
+  private final long maxBytes;
+  private final Map<String, StoreRing> rings = new ConcurrentHashMap<>();
+  private final AtomicLong totalEvents = new AtomicLong();
+  private final AtomicLong totalBytes = new AtomicLong();
+  private final Counter resumed;
+  private final Counter resynced;
+
+  public WsReplayBuffer(@Value("${app.ws.replay.max-events:256}") int maxEvents,
+                        @Value("${app.ws.replay.max-bytes:262144}") long maxBytes,
+                        MeterRegistry registry) {
+    this.maxEvents = maxEvents;
+    this.maxBytes = maxBytes;
+    Gauge.builder("ws.replay.stores", rings, Map::size).register(registry);
+    Gauge.builder("ws.replay.events", totalEvents, AtomicLong::get).register(registry);
+    Gauge.builder("ws.replay.bytes", totalBytes, AtomicLong::get).baseUnit("bytes").register(registry);
+    Gauge.builder("ws.replay.max-events-per-store", () -> maxEvents).register(registry);
+    Gauge.builder("ws.replay.max-bytes-per-store", () -> maxBytes).baseUnit("bytes").register(registry);
+    this.resumed = Counter.builder("ws.replay.resumes").tag("outcome", "ok").register(registry);
+    this.resynced = Counter.builder("ws.replay.resumes").tag("outcome", "resync").register(registry);
+  }
+
+  public void append(String storeId, long seq, List<String> destinations, byte[] body) {
+    if (storeId == null || seq <= 0) return;
+    rings.computeIfAbsent(storeId, id -> new StoreRing()).append(new Entry(seq, destinations, body));
+  }
+
+  public Replay replay(String storeId, String destination, long afterSeq) {
+    StoreRing ring = rings.get(storeId);
+    Replay replay;
+    if (ring == null) {
+      replay = new Replay();
+      replay.resync = afterSeq > 0;
+    } else {
+      replay = ring.replay(destination, afterSeq);
+    }
+    (replay.resync ? resynced : resumed).increment();
+    return replay;
+  }
+
+  private class StoreRing {
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long bytes;
+    private long floor = -1;
+    private long latest;
+
+    synchronized void append(Entry entry) {
+      if (floor < 0) floor = entry.seq - 1;
+      latest = Math.max(latest, entry.seq);
+      entries.addLast(entry);
+      bytes += entry.body.length;
+      totalEvents.incrementAndGet();
+      totalBytes.addAndGet(entry.body.length);
+      while (!entries.isEmpty() && (entries.size() > maxEvents || bytes > maxBytes)) {
+        Entry evicted = entries.removeFirst();
+        bytes -= evicted.body.length;
+        floor = Math.max(floor, evicted.seq);
+        totalEvents.decrementAndGet();
+        totalBytes.addAndGet(-evicted.body.length);
+      }
+    }
+
+    synchronized Replay replay(String destination, long afterSeq) {
+      Replay replay = new Replay();
+      replay.latestSeq = latest;
+      if (afterSeq > latest || afterSeq < floor) {
+        replay.resync = true;
+        return replay;
+      }
+      for (Entry entry : entries) {
+        if (entry.seq > afterSeq && entry.destinations.contains(destination)) {
+          replay.events.add(entry.body);
+        }
+      }
+      return replay;
+    }
+  }
+
+  private static class Entry {
+    final long seq;
+    final List<String> destinations;
+    final byte[] body;
+
+    Entry(long seq, List<String> destinations, byte[] body) {
+      this.seq = seq;
+      this.destinations = destinations;
+      this.body = body;
+    }
+  }
+
+  public static class Replay {
+    public boolean resync;
+    public long latestSeq;
+    public List<byte[]> events = new ArrayList<>();
+  }
+}
@@ -0,0 +1,47 @@
+package com.smartorder.ws;
+
+import com.smartorder.api.dto.WsResume;
+import com.smartorder.api.dto.WsResumeRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.StringJoiner;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.stereotype.Controller;
+
+@Controller
+public class WsResumeController {
+  private final WsSubscriptionInterceptor guard;
+  private final WsTopics topics;
+  private final WsReplayBuffer replayBuffer;
+
+  public WsResumeController(WsSubscriptionInterceptor guard, WsTopics topics, WsReplayBuffer replayBuffer) {
+    this.guard = guard;
+    this.topics = topics;
+    this.replayBuffer = replayBuffer;
+  }
+
+  @MessageMapping("/resume")
+  @SendToUser(destinations = "/queue/resume", broadcast = false)
+  public WsResume resume(@Payload WsResumeRequest request, SimpMessageHeaderAccessor accessor) {
+    if (!guard.canSubscribe(request.destination, accessor.getSessionAttributes(), accessor.getFirstNativeHeader("tableCode"))) {
+      throw new MessageDeliveryException("Forbidden");
+    }
+    WsTopics.Route route = topics.parse(request.destination);
+    long lastSeq = request.lastSeq == null ? 0 : request.lastSeq;
+    WsReplayBuffer.Replay replay = replayBuffer.replay(route.storeId, request.destination, lastSeq);
+
+    WsResume resume = new WsResume();
+    resume.destination = request.destination;
+    resume.status = replay.resync ? "RESYNC" : "OK";
+    resume.latestSeq = replay.latestSeq;
+    StringJoiner events = new StringJoiner(",", "[", "]");
+    for (byte[] body : replay.events) {
+      events.add(new String(body, StandardCharsets.UTF_8));
+    }
+    resume.events = events.toString();
+    return resume;
+  }
+}
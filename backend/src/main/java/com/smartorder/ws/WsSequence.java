@@ -0,0 +1,28 @@
+package com.smartorder.ws;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WsSequence {
+  private final StringRedisTemplate redisTemplate;
+  private final boolean shared;
+  private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+  public WsSequence(StringRedisTemplate redisTemplate, @Value("${app.ws.relay:local}") String relay) {
+    this.redisTemplate = redisTemplate;
+    this.shared = "redis".equals(relay);
+  }
+
+  public long next(String storeId) {
+    if (shared) {
+      Long seq = redisTemplate.opsForValue().increment("ws:seq:" + storeId);
+      return seq == null ? 0L : seq;
+    }
+    return counters.computeIfAbsent(storeId, id -> new AtomicLong()).incrementAndGet();
+  }
+}
@@ -0,0 +1,118 @@
+package com.smartorder.ws;
+
+import com.smartorder.model.TableCode;
+import com.smartorder.service.JwtUtil;
+import com.smartorder.service.JwtUtil.JwtClaims;
+import com.smartorder.service.TableCodeService;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WsSubscriptionInterceptor implements ChannelInterceptor {
+  private static final Logger log = LoggerFactory.getLogger(WsSubscriptionInterceptor.class);
+
+  private final JwtUtil jwtUtil;
+  private final TableCodeService tableCodeService;
+  private final WsTopics topics;
+
+  public WsSubscriptionInterceptor(JwtUtil jwtUtil, TableCodeService tableCodeService, WsTopics topics) {
+    this.jwtUtil = jwtUtil;
+    this.tableCodeService = tableCodeService;
+    this.topics = topics;
+  }
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+    if (accessor == null || accessor.getCommand() == null) {
+      return message;
+    }
+    if (accessor.getCommand() == StompCommand.CONNECT) {
+      remember(accessor);
+    } else if (accessor.getCommand() == StompCommand.SUBSCRIBE) {
+      authorize(accessor);
+    }
+    return message;
+  }
+
+  private void remember(StompHeaderAccessor accessor) {
+    Map<String, Object> session = accessor.getSessionAttributes();
+    if (session == null) return;
+    String token = resolveToken(accessor.getFirstNativeHeader("Authorization"));
+    if (token != null) {
+      JwtClaims claims;
+      try {
+        claims = jwtUtil.parse(token);
+      } catch (Exception ex) {
+        throw new MessageDeliveryException("Unauthorized");
+      }
+      session.put("auth.storeId", claims.storeId);
+      session.put("auth.role", claims.role);
+    }
+    String code = accessor.getFirstNativeHeader("tableCode");
+    if (code != null && !code.isBlank()) {
+      session.put("table.code", code);
+    }
+  }
+
+  private void authorize(StompHeaderAccessor accessor) {
+    String destination = accessor.getDestination();
+    if (destination != null && destination.startsWith("/user/queue/")) {
+      return;
+    }
+    if (!canSubscribe(destination, accessor.getSessionAttributes(), accessor.getFirstNativeHeader("tableCode"))) {
+      throw new MessageDeliveryException("Forbidden");
+    }
+  }
+
+  public boolean canSubscribe(String destination, Map<String, Object> session, String tableCode) {
+    WsTopics.Route route = topics.parse(destination);
+    if (route == null) {
+      log.warn("WS subscribe rejected: unknown destination={}", destination);
+      return false;
+    }
+    Object role = session == null ? null : session.get("auth.role");
+    Object authStoreId = session == null ? null : session.get("auth.storeId");
+    boolean platform = "PLATFORM".equals(role);
+    boolean staff = platform || route.storeId.equals(authStoreId);
+
+    boolean allowed = switch (route.scope) {
+      case WsTopics.MENU -> true;
+      case WsTopics.KITCHEN -> platform || staff && ("ADMIN".equals(role) || "KITCHEN".equals(role));
+      case WsTopics.CASHIER -> platform || staff && ("ADMIN".equals(role) || "CASHIER".equals(role));
+      case WsTopics.TABLE -> staff || holdsTable(tableCode, session, route);
+      default -> false;
+    };
+    if (!allowed) {
+      log.warn("WS subscribe forbidden: role={} storeId={} destination={}", role, authStoreId, destination);
+    }
+    return allowed;
+  }
+
+  private boolean holdsTable(String code, Map<String, Object> session, WsTopics.Route route) {
+    if ((code == null || code.isBlank()) && session != null && session.get("table.code") instanceof String stored) {
+      code = stored;
+    }
+    if (code != null && !code.isBlank()) {
+      TableCode tc = tableCodeService.getByCode(code);
+      return tc != null && route.storeId.equals(tc.storeId) && route.tableNo.equals(tc.tableNo);
+    }
+    // Tables without a bound QR code are reachable by storeId/tableNo alone, same as the cart API.
+    return tableCodeService.getByTable(route.storeId, route.tableNo) == null;
+  }
+
+  private String resolveToken(String header) {
+    if (header == null || !header.startsWith("Bearer ")) return null;
+    String token = header.substring("Bearer ".length()).trim();
+    return token.isEmpty() ? null : token;
+  }
+}
@@ -0,0 +1,68 @@
+package com.smartorder.ws;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WsTopics {
+  public static final String KITCHEN = "kitchen";
+  public static final String CASHIER = "cashier";
+  public static final String MENU = "menu";
+  public static final String TABLE = "table";
+
+  private final String storePrefix;
+
+  public WsTopics(@Value("${app.ws.topic-prefix:/topic}") String topicPrefix) {
+    this.storePrefix = topicPrefix + "/store/";
+  }
+
+  public String kitchen(String storeId) {
+    return storePrefix + storeId + "/" + KITCHEN;
+  }
+
+  public String cashier(String storeId) {
+    return storePrefix + storeId + "/" + CASHIER;
+  }
+
+  public String menu(String storeId) {
+    return storePrefix + storeId + "/" + MENU;
+  }
+
+  public String table(String storeId, String tableNo) {
+    return storePrefix + storeId + "/" + TABLE + "/" + tableNo;
+  }
+
+  public String[] staff(String storeId) {
+    return new String[] { kitchen(storeId), cashier(storeId) };
+  }
+
+  public String[] staffAndTable(String storeId, String tableNo) {
+    return new String[] { kitchen(storeId), cashier(storeId), table(storeId, tableNo) };
+  }
+
+  public Route parse(String destination) {
+    if (destination == null || !destination.startsWith(storePrefix)) {
+      return null;
+    }
+    String[] parts = destination.substring(storePrefix.length()).split("/");
+    if (parts.length < 2 || parts[0].isBlank()) {
+      return null;
+    }
+    Route route = new Route();
+    route.storeId = parts[0];
+    route.scope = parts[1];
+    if (TABLE.equals(route.scope)) {
+      if (parts.length != 3 || parts[2].isBlank()) return null;
+      route.tableNo = parts[2];
+    } else if (parts.length != 2) {
+      return null;
+    }
+    return route;
+  }
+
+  public static class Route {
+    public String storeId;
+    public String scope;
+    public String tableNo;
+  }
+}
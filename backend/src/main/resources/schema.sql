@@ -27,6 +27,11 @@ CREATE TABLE IF NOT EXISTS table_codes (
   UNIQUE KEY uk_code (code)
 );
 
+CREATE TABLE IF NOT EXISTS menu_versions (
+  store_id VARCHAR(64) PRIMARY KEY,
+  version BIGINT NOT NULL
+);
+
 CREATE TABLE IF NOT EXISTS menu_categories (
   id VARCHAR(64) PRIMARY KEY,
   store_id VARCHAR(64) NOT NULL,
@@ -63,33 +68,60 @@ CREATE TABLE IF NOT EXISTS option_items (
   extra_price DECIMAL(10,2) NOT NULL
 );
 
+CREATE TABLE IF NOT EXISTS promotions (
+  id VARCHAR(64) PRIMARY KEY,
+  store_id VARCHAR(64) NOT NULL,
+  name VARCHAR(128) NOT NULL,
+  kind VARCHAR(32) NOT NULL,
+  scope VARCHAR(16) NOT NULL,
+  target_id VARCHAR(64),
+  percent_off INT,
+  amount_off DECIMAL(10,2),
+  nth INT,
+  start_time TIME NULL,
+  end_time TIME NULL,
+  active TINYINT(1) NOT NULL DEFAULT 1,
+  created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+  KEY idx_promotions_store (store_id)
+);
+
 CREATE TABLE IF NOT EXISTS orders (
   id VARCHAR(64) PRIMARY KEY,
   store_id VARCHAR(64) NOT NULL,
   table_no VARCHAR(32) NOT NULL,
   client_id VARCHAR(64),
+  idempotency_key VARCHAR(128),
   status VARCHAR(16) NOT NULL,
   payment_status VARCHAR(16) NOT NULL,
   people_count INT,
   remark VARCHAR(255),
   total_amount DECIMAL(10,2) NOT NULL,
+  discount_amount DECIMAL(10,2) NOT NULL DEFAULT 0,
   created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
   updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
   paid_at TIMESTAMP NULL,
   paid_by VARCHAR(64),
   cleared_at TIMESTAMP NULL,
-  cleared_by VARCHAR(64)
+  cleared_by VARCHAR(64),
+  version BIGINT NOT NULL DEFAULT 0,
+  UNIQUE KEY uk_orders_idempotency (store_id, idempotency_key),
+  KEY idx_orders_store_created (store_id, created_at, id),
+  KEY idx_orders_store_status_created (store_id, status, created_at, id),
+  KEY idx_orders_store_table_created (store_id, table_no, created_at, id)
 );
 
 CREATE TABLE IF NOT EXISTS order_items (
   id BIGINT AUTO_INCREMENT PRIMARY KEY,
   order_id VARCHAR(64) NOT NULL,
+  cart_item_id BIGINT NULL,
   dish_id VARCHAR(64) NOT NULL,
   dish_name VARCHAR(128) NOT NULL,
   qty INT NOT NULL,
   unit_price DECIMAL(10,2) NOT NULL,
   line_total DECIMAL(10,2) NOT NULL,
-  item_remark VARCHAR(255)
+  item_remark VARCHAR(255),
+  options_json JSON NULL,
+  KEY idx_order_items_order (order_id)
 );
 
 CREATE TABLE IF NOT EXISTS order_item_options (
@@ -99,7 +131,8 @@ CREATE TABLE IF NOT EXISTS order_item_options (
   group_name VARCHAR(64),
   option_id VARCHAR(64),
   option_name VARCHAR(64),
-  extra_price DECIMAL(10,2) NOT NULL
+  extra_price DECIMAL(10,2) NOT NULL,
+  KEY idx_order_item_options_item (order_item_id)
 );
 
 CREATE TABLE IF NOT EXISTS users (
@@ -116,7 +149,9 @@ CREATE TABLE IF NOT EXISTS carts (
   store_id VARCHAR(64) NOT NULL,
   table_no VARCHAR(32) NOT NULL,
   updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-  UNIQUE KEY uk_cart_store_table (store_id, table_no)
+  version BIGINT NOT NULL DEFAULT 0,
+  UNIQUE KEY uk_cart_store_table (store_id, table_no),
+  KEY idx_carts_updated (updated_at)
 );
 
 CREATE TABLE IF NOT EXISTS cart_items (
@@ -126,7 +161,9 @@ CREATE TABLE IF NOT EXISTS cart_items (
   dish_name VARCHAR(128) NOT NULL,
   qty INT NOT NULL,
   unit_price DECIMAL(10,2) NOT NULL,
-  option_signature VARCHAR(255) NOT NULL
+  option_signature VARCHAR(255) NOT NULL,
+  options_json JSON NULL,
+  UNIQUE KEY uk_cart_item_line (cart_id, dish_id, option_signature)
 );
 
 CREATE TABLE IF NOT EXISTS cart_item_options (
@@ -181,3 +218,17 @@ CREATE TABLE IF NOT EXISTS auth_sessions (
   refresh_expires_at TIMESTAMP NOT NULL,
   created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
+
+CREATE TABLE IF NOT EXISTS outbox_events (
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  type VARCHAR(32) NOT NULL,
+  destinations VARCHAR(1024) NOT NULL,
+  payload MEDIUMTEXT NOT NULL,
+  created_at TIMESTAMP(3) NOT NULL,
+  delivered_at TIMESTAMP(3) NULL,
+  attempts INT NOT NULL DEFAULT 0,
+  seq BIGINT NOT NULL DEFAULT 0,
+  next_attempt_at TIMESTAMP(3) NULL,
+  failed_at TIMESTAMP(3) NULL,
+  KEY idx_outbox_delivered (delivered_at, id)
+);
@@ -0,0 +1,79 @@
+package com.smartorder.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+// Totals a 50-line order with Money against the BigDecimal arithmetic it replaced. mvn -Pbenchmark test
+@Tag("benchmark")
+class MoneyBenchmark {
+  private static final int LINES = 50;
+  private static final int ORDERS = 1_000;
+  private static final int WARMUP_ROUNDS = 20;
+  private static final int ROUNDS = 50;
+
+  @Test
+  void fiftyLineOrderTotals() {
+    Random random = new Random(42);
+    Money[][] moneyPrices = new Money[ORDERS][LINES];
+    BigDecimal[][] decimalPrices = new BigDecimal[ORDERS][LINES];
+    int[][] qtys = new int[ORDERS][LINES];
+    for (int o = 0; o < ORDERS; o++) {
+      for (int l = 0; l < LINES; l++) {
+        long cents = 100 + random.nextInt(5_000);
+        moneyPrices[o][l] = Money.ofMinor(cents);
+        decimalPrices[o][l] = BigDecimal.valueOf(cents, 2);
+        qtys[o][l] = 1 + random.nextInt(4);
+      }
+    }
+
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      moneyTotals(moneyPrices, qtys);
+      decimalTotals(decimalPrices, qtys);
+    }
+    long moneyNanos = 0;
+    long decimalNanos = 0;
+    long moneySum = 0;
+    BigDecimal decimalSum = BigDecimal.ZERO;
+    for (int i = 0; i < ROUNDS; i++) {
+      long start = System.nanoTime();
+      moneySum += moneyTotals(moneyPrices, qtys);
+      moneyNanos += System.nanoTime() - start;
+      start = System.nanoTime();
+      decimalSum = decimalSum.add(decimalTotals(decimalPrices, qtys));
+      decimalNanos += System.nanoTime() - start;
+    }
+
+    double orders = (double) ROUNDS * ORDERS;
+    System.out.printf("50-line order total: Money %.0f ns/order, BigDecimal %.0f ns/order%n",
+        moneyNanos / orders, decimalNanos / orders);
+    assertThat(Money.ofMinor(moneySum).toDecimal()).isEqualByComparingTo(decimalSum);
+  }
+
+  private static long moneyTotals(Money[][] prices, int[][] qtys) {
+    long sum = 0;
+    for (int o = 0; o < prices.length; o++) {
+      Money total = Money.ZERO;
+      for (int l = 0; l < LINES; l++) {
+        total = total.plus(prices[o][l].times(qtys[o][l]));
+      }
+      sum += total.minor();
+    }
+    return sum;
+  }
+
+  private static BigDecimal decimalTotals(BigDecimal[][] prices, int[][] qtys) {
+    BigDecimal sum = BigDecimal.ZERO;
+    for (int o = 0; o < prices.length; o++) {
+      BigDecimal total = BigDecimal.ZERO;
+      for (int l = 0; l < LINES; l++) {
+        total = total.add(prices[o][l].multiply(BigDecimal.valueOf(qtys[o][l])));
+      }
+      sum = sum.add(total);
+    }
+    return sum;
+  }
+}
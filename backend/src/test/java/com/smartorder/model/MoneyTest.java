@@ -0,0 +1,65 @@
+package com.smartorder.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+
+class MoneyTest {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void decimalsRoundHalfUpToTheCent() {
+    assertThat(Money.parse("1.005").minor()).isEqualTo(101);
+    assertThat(Money.parse("1.004").minor()).isEqualTo(100);
+    assertThat(Money.parse("-1.005").minor()).isEqualTo(-101);
+    assertThat(Money.of(new BigDecimal("12")).minor()).isEqualTo(1200);
+    assertThat(Money.of(null)).isNull();
+  }
+
+  @Test
+  void arithmeticIsExact() {
+    Money price = Money.parse("0.10");
+    Money total = Money.ZERO;
+    for (int i = 0; i < 10; i++) {
+      total = total.plus(price);
+    }
+    assertThat(total).isEqualTo(Money.parse("1.00"));
+    assertThat(Money.parse("19.99").times(3)).isEqualTo(Money.parse("59.97"));
+    assertThat(Money.parse("5.00").minus(Money.parse("7.25"))).isEqualTo(Money.parse("-2.25"));
+    assertThat(Money.parse("2.50").negate().isNegative()).isTrue();
+  }
+
+  @Test
+  void overflowThrowsInsteadOfWrapping() {
+    Money max = Money.ofMinor(Long.MAX_VALUE);
+    assertThatThrownBy(() -> max.plus(Money.ofMinor(1))).isInstanceOf(ArithmeticException.class);
+    assertThatThrownBy(() -> max.times(2)).isInstanceOf(ArithmeticException.class);
+  }
+
+  @Test
+  void formatsWithTwoDecimals() {
+    assertThat(Money.ofMinor(0)).hasToString("0.00");
+    assertThat(Money.ofMinor(5)).hasToString("0.05");
+    assertThat(Money.ofMinor(-5)).hasToString("-0.05");
+    assertThat(Money.ofMinor(-105)).hasToString("-1.05");
+    assertThat(Money.ofMinor(123456)).hasToString("1234.56");
+    assertThat(Money.ofMinor(-105).toDecimal()).isEqualByComparingTo("-1.05");
+  }
+
+  @Test
+  void jsonReadsNumbersAndStringsAndWritesDecimals() throws Exception {
+    assertThat(objectMapper.readValue("12", Money.class)).isEqualTo(Money.parse("12.00"));
+    assertThat(objectMapper.readValue("12.345", Money.class)).isEqualTo(Money.parse("12.35"));
+    assertThat(objectMapper.readValue("\"8.5\"", Money.class)).isEqualTo(Money.parse("8.50"));
+    assertThat(objectMapper.writeValueAsString(Money.parse("8.5"))).isEqualTo("8.50");
+  }
+
+  @Test
+  void ordersByAmount() {
+    assertThat(Money.parse("1.00")).isLessThan(Money.parse("1.01"));
+    assertThat(Money.parse("3.10")).isEqualByComparingTo(Money.ofMinor(310));
+  }
+}
@@ -0,0 +1,208 @@
+package com.smartorder.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.smartorder.model.CartDelta;
+import com.smartorder.model.CartItem;
+import com.smartorder.model.Dish;
+import com.smartorder.model.Menu;
+import com.smartorder.model.MenuCategory;
+import com.smartorder.model.Money;
+import com.smartorder.model.TableCart;
+import com.smartorder.ws.WsTopics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class CartServiceConcurrencyTest {
+  private static final int THREADS = 16;
+  private static final int ADDS_PER_THREAD = 200;
+
+  private RacyCartStore store;
+  private CartLocks locks;
+  private CartService service;
+  private ExecutorService pool;
+
+  @BeforeEach
+  void setUp() {
+    store = new RacyCartStore();
+    locks = new CartLocks(null, "local", 64, 2000, 5000);
+    MenuService menuService = mock(MenuService.class);
+    when(menuService.priceIndex(anyString())).thenReturn(MenuPriceIndex.compile(menu()));
+    service = new CartService(store, store, mock(OrderService.class), menuService, mock(PromotionService.class),
+        mock(PrepBoardService.class), mock(TableService.class), mock(OutboxService.class),
+        mock(CartEventCoalescer.class), locks, new TransactionTemplate(mock(PlatformTransactionManager.class)),
+        mock(WsTopics.class));
+    pool = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterEach
+  void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  void concurrentAddsOnOneTableKeepEveryIncrement() throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      String dishId = t % 2 == 0 ? "d1" : "d2";
+      futures.add(pool.submit(() -> {
+        start.await();
+        for (int i = 0; i < ADDS_PER_THREAD; i++) {
+          service.addItem("s1", "T1", dishId, 1, List.of());
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get(60, TimeUnit.SECONDS);
+    }
+
+    TableCart cart = service.getCart("s1", "T1");
+    int half = THREADS / 2 * ADDS_PER_THREAD;
+    assertThat(qtyOf(cart, "d1")).isEqualTo(half);
+    assertThat(qtyOf(cart, "d2")).isEqualTo(half);
+    assertThat(cart.version).isEqualTo((long) THREADS * ADDS_PER_THREAD);
+  }
+
+  @Test
+  void concurrentAddsAndUpdatesEndOnTheLastWrite() throws Exception {
+    service.addItem("s1", "T1", "d1", 1, List.of());
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      boolean adder = t % 2 == 0;
+      futures.add(pool.submit(() -> {
+        start.await();
+        for (int i = 0; i < ADDS_PER_THREAD; i++) {
+          if (adder) {
+            service.addItem("s1", "T1", "d2", 1, List.of());
+          } else {
+            service.updateQty("s1", "T1", "d1", "", 5);
+          }
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get(60, TimeUnit.SECONDS);
+    }
+
+    TableCart cart = service.getCart("s1", "T1");
+    assertThat(qtyOf(cart, "d1")).isEqualTo(5);
+    assertThat(qtyOf(cart, "d2")).isEqualTo(THREADS / 2 * ADDS_PER_THREAD);
+    assertThat(cart.version).isEqualTo(1L + (long) THREADS * ADDS_PER_THREAD);
+  }
+
+  @Test
+  void busyTableFailsAfterTheWait() throws Exception {
+    CartLocks shortWait = new CartLocks(null, "local", 64, 50, 5000);
+    CountDownLatch held = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<?> holder = pool.submit(() -> shortWait.withLock("s1", "T1", () -> {
+      held.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return null;
+    }));
+    held.await();
+    try {
+      assertThatThrownBy(() -> shortWait.withLock("s1", "T1", () -> null))
+          .isInstanceOf(IllegalStateException.class)
+          .hasMessage("Cart is busy");
+    } finally {
+      release.countDown();
+      holder.get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  private static int qtyOf(TableCart cart, String dishId) {
+    return cart.items.stream().filter(item -> dishId.equals(item.dishId)).mapToInt(item -> item.qty).sum();
+  }
+
+  private static Menu menu() {
+    Menu menu = new Menu();
+    menu.storeId = "s1";
+    MenuCategory category = new MenuCategory();
+    category.id = "c1";
+    category.name = "Mains";
+    for (String id : List.of("d1", "d2")) {
+      Dish dish = new Dish();
+      dish.id = id;
+      dish.categoryId = "c1";
+      dish.name = "Dish " + id;
+      dish.price = Money.parse("12.50");
+      category.dishes.add(dish);
+    }
+    menu.categories.add(category);
+    return menu;
+  }
+
+  // Read-modify-write with yields in between, like the SQL it stands in for; only the table lock keeps it exact.
+  static class RacyCartStore extends JdbcCartStore {
+    private final Map<String, Integer> qtys = new ConcurrentHashMap<>();
+    private long version;
+
+    RacyCartStore() {
+      super(null, null);
+    }
+
+    @Override
+    public TableCart get(String storeId, String tableNo) {
+      TableCart cart = new TableCart();
+      cart.storeId = storeId;
+      cart.tableNo = tableNo;
+      cart.version = version;
+      qtys.forEach((dishId, qty) -> {
+        CartItem item = new CartItem();
+        item.dishId = dishId;
+        item.qty = qty;
+        cart.items.add(item);
+      });
+      return cart;
+    }
+
+    @Override
+    public CartDelta addItem(String storeId, String tableNo, CartItem item) {
+      int qty = qtys.getOrDefault(item.dishId, 0);
+      Thread.yield();
+      qtys.put(item.dishId, qty + item.qty);
+      return delta(storeId, tableNo);
+    }
+
+    @Override
+    public CartDelta updateQty(String storeId, String tableNo, String dishId, String optionSignature, int qty) {
+      Thread.yield();
+      qtys.put(dishId, qty);
+      return delta(storeId, tableNo);
+    }
+
+    private CartDelta delta(String storeId, String tableNo) {
+      long next = version + 1;
+      Thread.yield();
+      version = next;
+      return new CartDelta(storeId, tableNo, next);
+    }
+  }
+}
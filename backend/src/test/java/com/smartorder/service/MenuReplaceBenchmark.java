@@ -0,0 +1,108 @@
+package com.smartorder.service;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartorder.model.Dish;
+import com.smartorder.model.MenuCategory;
+import com.smartorder.model.Money;
+import com.smartorder.model.OptionGroup;
+import com.smartorder.model.OptionItem;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// replaceMenu for menus of 50, 500 and 5,000 dishes: a first import, an unchanged re-import and one with 10% of prices
+// changed. Needs a MySQL with schema.sql applied: mvn -Pbenchmark test -Dbench.db.url=... -Dbench.db.user=...
+@Tag("benchmark")
+class MenuReplaceBenchmark {
+  private static final int DISHES_PER_CATEGORY = 50;
+  private static final int RUNS = 3;
+
+  @Test
+  void replaceMenuBySize() {
+    String url = System.getProperty("bench.db.url");
+    assumeTrue(url != null, "set -Dbench.db.url to run");
+    SingleConnectionDataSource dataSource = new SingleConnectionDataSource(url,
+        System.getProperty("bench.db.user", "root"), System.getProperty("bench.db.password", ""), true);
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    MenuService service = new MenuService(jdbcTemplate, new ObjectMapper(), new SimpleMeterRegistry(), 10, 1 << 26, 0);
+    try {
+      for (int dishes : new int[] {50, 500, 5_000}) {
+        String storeId = "bench-menu-" + dishes;
+        long[] first = new long[RUNS];
+        long[] unchanged = new long[RUNS];
+        long[] repriced = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+          cleanup(jdbcTemplate, storeId);
+          first[run] = time(() -> tx.executeWithoutResult(status -> service.replaceMenu(storeId, menu(dishes, 0))));
+          unchanged[run] = time(() -> tx.executeWithoutResult(status -> service.replaceMenu(storeId, menu(dishes, 0))));
+          repriced[run] = time(() -> tx.executeWithoutResult(status -> service.replaceMenu(storeId, menu(dishes, 10))));
+        }
+        cleanup(jdbcTemplate, storeId);
+        System.out.printf("dishes=%d first=%.1fms unchanged=%.1fms repriced-10%%=%.1fms (median of %d)%n",
+            dishes, median(first), median(unchanged), median(repriced), RUNS);
+      }
+    } finally {
+      dataSource.destroy();
+    }
+  }
+
+  private static long time(Runnable work) {
+    long start = System.nanoTime();
+    work.run();
+    return System.nanoTime() - start;
+  }
+
+  private static double median(long[] nanos) {
+    long[] sorted = nanos.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2] / 1_000_000.0;
+  }
+
+  // every `repricePercent`-th percent of dishes gets a new price, the rest match the stored rows
+  private static List<MenuCategory> menu(int dishes, int repricePercent) {
+    List<MenuCategory> categories = new ArrayList<>();
+    for (int i = 0; i < dishes; i++) {
+      if (i % DISHES_PER_CATEGORY == 0) {
+        MenuCategory category = new MenuCategory();
+        category.name = "Category " + (i / DISHES_PER_CATEGORY);
+        categories.add(category);
+      }
+      Dish dish = new Dish();
+      dish.name = "Dish " + i;
+      boolean repriced = repricePercent > 0 && i % (100 / repricePercent) == 0;
+      dish.price = Money.ofMinor(800 + i % 700 + (repriced ? 50 : 0));
+      dish.description = "House dish number " + i;
+      dish.tags = List.of("house");
+      OptionGroup group = new OptionGroup();
+      group.name = "Size";
+      for (String size : List.of("Regular", "Large")) {
+        OptionItem item = new OptionItem();
+        item.name = size;
+        item.extraPrice = size.equals("Large") ? Money.parse("2.00") : Money.ZERO;
+        group.items.add(item);
+      }
+      dish.optionGroups.add(group);
+      categories.get(categories.size() - 1).dishes.add(dish);
+    }
+    return categories;
+  }
+
+  private static void cleanup(JdbcTemplate jdbcTemplate, String storeId) {
+    jdbcTemplate.update("DELETE oi FROM option_items oi JOIN option_groups og ON og.id = oi.group_id "
+        + "JOIN dishes d ON d.id = og.dish_id WHERE d.store_id=?", storeId);
+    jdbcTemplate.update("DELETE og FROM option_groups og JOIN dishes d ON d.id = og.dish_id WHERE d.store_id=?", storeId);
+    jdbcTemplate.update("DELETE FROM dishes WHERE store_id=?", storeId);
+    jdbcTemplate.update("DELETE FROM menu_categories WHERE store_id=?", storeId);
+    jdbcTemplate.update("DELETE FROM menu_versions WHERE store_id=?", storeId);
+  }
+}
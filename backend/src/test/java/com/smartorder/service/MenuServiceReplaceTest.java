@@ -0,0 +1,76 @@
+package com.smartorder.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartorder.model.Dish;
+import com.smartorder.model.MenuCategory;
+import com.smartorder.model.MenuPatch;
+import com.smartorder.model.Money;
+import com.smartorder.model.OptionGroup;
+import com.smartorder.model.OptionItem;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class MenuServiceReplaceTest {
+  private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+  private final MenuService service = new MenuService(jdbcTemplate, new ObjectMapper(), new SimpleMeterRegistry(),
+      10, 1 << 20, 1000);
+
+  @Test
+  void newMenuIsInsertedInChunkedBatches() {
+    MenuPatch patch = service.replaceMenu("s1", menu(4, 300));
+
+    assertThat(batchSizes("INSERT INTO menu_categories")).containsExactly(4);
+    assertThat(batchSizes("INSERT INTO dishes")).containsExactly(500, 500, 200);
+    assertThat(batchSizes("INSERT INTO option_groups")).containsExactly(500, 500, 200);
+    assertThat(batchSizes("INSERT INTO option_items")).containsExactly(500, 500, 500, 500, 400);
+    // categories, dishes, and one group with two items per dish
+    assertThat(patch.rowsWritten).isEqualTo(4 + 1200 + 1200 * 3);
+    assertThat(patch.categories).hasSize(4);
+  }
+
+  private List<Integer> batchSizes(String sqlPrefix) {
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+    verify(jdbcTemplate, atLeast(0)).batchUpdate(startsWith(sqlPrefix), rows.capture());
+    List<Integer> sizes = new ArrayList<>();
+    for (List<Object[]> batch : rows.getAllValues()) {
+      sizes.add(batch.size());
+    }
+    return sizes;
+  }
+
+  private static List<MenuCategory> menu(int categories, int dishesPerCategory) {
+    List<MenuCategory> menu = new ArrayList<>();
+    for (int c = 0; c < categories; c++) {
+      MenuCategory category = new MenuCategory();
+      category.name = "Category " + c;
+      for (int d = 0; d < dishesPerCategory; d++) {
+        Dish dish = new Dish();
+        dish.name = "Dish " + c + "-" + d;
+        dish.price = Money.parse("9.50");
+        OptionGroup group = new OptionGroup();
+        group.name = "Size";
+        for (String size : List.of("Regular", "Large")) {
+          OptionItem item = new OptionItem();
+          item.name = size;
+          item.extraPrice = Money.parse(size.equals("Large") ? "2.00" : "0");
+          group.items.add(item);
+        }
+        dish.optionGroups.add(group);
+        category.dishes.add(dish);
+      }
+      menu.add(category);
+    }
+    return menu;
+  }
+}
@@ -0,0 +1,115 @@
+package com.smartorder.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartorder.model.Money;
+import com.smartorder.model.Order;
+import com.smartorder.model.OrderItem;
+import com.smartorder.model.OrderStatus;
+import com.smartorder.model.PaymentStatus;
+import com.smartorder.model.SelectedOption;
+import com.smartorder.ws.WsTopics;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+
+class OrderServiceWriteTest {
+  private JdbcTemplate jdbcTemplate;
+  private OrderService service;
+
+  @BeforeEach
+  void setUp() {
+    jdbcTemplate = mock(JdbcTemplate.class);
+    service = new OrderService(jdbcTemplate, mock(TableService.class), mock(OutboxService.class),
+        new OptionCodec(new ObjectMapper(), "rows"), mock(MenuService.class), mock(PrepBoardService.class),
+        new WsTopics("/topic"));
+  }
+
+  @Test
+  void itemsAndOptionsAreWrittenInOneBatchEach() {
+    returnKeys(3);
+    Order order = order(3, 2);
+
+    service.insertOrders(List.of(order));
+
+    verify(jdbcTemplate, times(1)).batchUpdate(startsWith("INSERT INTO orders"), anyList());
+    verify(jdbcTemplate, times(1)).batchUpdate(any(PreparedStatementCreator.class),
+        any(BatchPreparedStatementSetter.class), any(KeyHolder.class));
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<Object[]>> options = ArgumentCaptor.forClass(List.class);
+    verify(jdbcTemplate, times(1)).batchUpdate(startsWith("INSERT INTO order_item_options"), options.capture());
+    assertThat(options.getValue()).hasSize(6);
+    assertThat(options.getValue()).extracting(row -> row[0]).containsExactly(101L, 101L, 102L, 102L, 103L, 103L);
+    assertThat(order.items).extracting(item -> item.id).containsExactly(101L, 102L, 103L);
+  }
+
+  @Test
+  void missingGeneratedKeysFailTheWrite() {
+    returnKeys(2);
+
+    assertThatThrownBy(() -> service.insertOrders(List.of(order(3, 1))))
+        .isInstanceOf(IllegalStateException.class);
+    verify(jdbcTemplate, never()).batchUpdate(startsWith("INSERT INTO order_item_options"), anyList());
+  }
+
+  private void returnKeys(int count) {
+    when(jdbcTemplate.batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class),
+        any(KeyHolder.class))).thenAnswer(invocation -> {
+          KeyHolder keyHolder = invocation.getArgument(2);
+          for (int i = 0; i < count; i++) {
+            keyHolder.getKeyList().add(Map.of("GENERATED_KEY", 101L + i));
+          }
+          return new int[count];
+        });
+  }
+
+  private static Order order(int items, int optionsPerItem) {
+    Order order = new Order();
+    order.orderId = "o1";
+    order.storeId = "s1";
+    order.tableNo = "T1";
+    order.status = OrderStatus.NEW;
+    order.paymentStatus = PaymentStatus.UNPAID;
+    order.totalAmount = Money.ZERO;
+    order.createdAt = Instant.now();
+    order.updatedAt = order.createdAt;
+    for (int i = 0; i < items; i++) {
+      OrderItem item = new OrderItem();
+      item.dishId = "d" + i;
+      item.dishName = "Dish " + i;
+      item.qty = 1;
+      item.unitPrice = Money.parse("9.90");
+      item.lineTotal = item.unitPrice;
+      item.selectedOptions = new ArrayList<>();
+      for (int j = 0; j < optionsPerItem; j++) {
+        SelectedOption option = new SelectedOption();
+        option.groupId = "g" + j;
+        option.groupName = "Group " + j;
+        option.optionId = "opt" + j;
+        option.optionName = "Option " + j;
+        option.extraPrice = Money.ZERO;
+        item.selectedOptions.add(option);
+      }
+      order.items.add(item);
+    }
+    return order;
+  }
+}
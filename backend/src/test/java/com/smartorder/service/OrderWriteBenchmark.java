@@ -0,0 +1,156 @@
+package com.smartorder.service;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartorder.model.Money;
+import com.smartorder.model.Order;
+import com.smartorder.model.OrderItem;
+import com.smartorder.model.OrderStatus;
+import com.smartorder.model.PaymentStatus;
+import com.smartorder.model.SelectedOption;
+import com.smartorder.ws.WsTopics;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Order write latency by order size, row-by-row inserts against the batched OrderService path. Needs a MySQL with
+// schema.sql applied: mvn -Pbenchmark test -Dbench.db.url=jdbc:mysql://localhost:3306/smart_order_bench?... -Dbench.db.user=...
+@Tag("benchmark")
+class OrderWriteBenchmark {
+  private static final String STORE = "bench";
+  private static final int WARMUP = 50;
+  private static final int RUNS = 300;
+  private static final int OPTIONS_PER_ITEM = 3;
+
+  @Test
+  void orderWriteLatencyBySize() {
+    String url = System.getProperty("bench.db.url");
+    assumeTrue(url != null, "set -Dbench.db.url to run");
+    SingleConnectionDataSource dataSource = new SingleConnectionDataSource(url,
+        System.getProperty("bench.db.user", "root"), System.getProperty("bench.db.password", ""), true);
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    OrderService service = new OrderService(jdbcTemplate, mock(TableService.class), mock(OutboxService.class),
+        new OptionCodec(new ObjectMapper(), "rows"), mock(MenuService.class), mock(PrepBoardService.class),
+        new WsTopics("/topic"));
+    try {
+      for (int size : new int[] {1, 12, 50}) {
+        long[] rowByRow = measure(() -> tx.executeWithoutResult(status -> insertRowByRow(jdbcTemplate, order(size))));
+        long[] batched = measure(() -> tx.executeWithoutResult(status -> service.insertOrders(List.of(order(size)))));
+        System.out.printf("items=%d options/item=%d row-by-row p50=%.2fms p99=%.2fms | batched p50=%.2fms p99=%.2fms%n",
+            size, OPTIONS_PER_ITEM, millis(rowByRow, 50), millis(rowByRow, 99), millis(batched, 50), millis(batched, 99));
+      }
+    } finally {
+      cleanup(jdbcTemplate);
+      dataSource.destroy();
+    }
+  }
+
+  private static long[] measure(Runnable write) {
+    for (int i = 0; i < WARMUP; i++) {
+      write.run();
+    }
+    long[] samples = new long[RUNS];
+    for (int i = 0; i < RUNS; i++) {
+      long start = System.nanoTime();
+      write.run();
+      samples[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(samples);
+    return samples;
+  }
+
+  private static double millis(long[] sorted, int percentile) {
+    int index = Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100.0 * sorted.length) - 1);
+    return sorted[index] / 1_000_000.0;
+  }
+
+  // the write path before batching: one INSERT per order, per item and per option
+  private static void insertRowByRow(JdbcTemplate jdbcTemplate, Order order) {
+    jdbcTemplate.update(
+        "INSERT INTO orders (id, store_id, table_no, client_id, idempotency_key, status, payment_status, people_count, remark, total_amount, discount_amount, created_at, updated_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        order.orderId, order.storeId, order.tableNo, order.clientId, order.idempotencyKey, order.status.name(),
+        order.paymentStatus.name(), order.peopleCount, order.remark, order.totalAmount.toDecimal(),
+        order.discountAmount.toDecimal(), Timestamp.from(order.createdAt), Timestamp.from(order.updatedAt));
+    for (OrderItem item : order.items) {
+      KeyHolder keyHolder = new GeneratedKeyHolder();
+      jdbcTemplate.update(connection -> {
+        PreparedStatement ps = connection.prepareStatement(
+            "INSERT INTO order_items (order_id, dish_id, dish_name, qty, unit_price, line_total, item_remark) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?)",
+            Statement.RETURN_GENERATED_KEYS);
+        ps.setString(1, order.orderId);
+        ps.setString(2, item.dishId);
+        ps.setString(3, item.dishName);
+        ps.setInt(4, item.qty);
+        ps.setBigDecimal(5, item.unitPrice.toDecimal());
+        ps.setBigDecimal(6, item.lineTotal.toDecimal());
+        ps.setString(7, item.itemRemark);
+        return ps;
+      }, keyHolder);
+      long itemId = keyHolder.getKey().longValue();
+      for (SelectedOption option : item.selectedOptions) {
+        jdbcTemplate.update(
+            "INSERT INTO order_item_options (order_item_id, group_id, group_name, option_id, option_name, extra_price) "
+                + "VALUES (?, ?, ?, ?, ?, ?)",
+            itemId, option.groupId, option.groupName, option.optionId, option.optionName, option.extraPrice.toDecimal());
+      }
+    }
+  }
+
+  private static Order order(int items) {
+    Order order = new Order();
+    order.orderId = UUID.randomUUID().toString();
+    order.storeId = STORE;
+    order.tableNo = "B1";
+    order.status = OrderStatus.NEW;
+    order.paymentStatus = PaymentStatus.UNPAID;
+    order.peopleCount = 2;
+    order.totalAmount = Money.ZERO;
+    order.createdAt = Instant.now();
+    order.updatedAt = order.createdAt;
+    for (int i = 0; i < items; i++) {
+      OrderItem item = new OrderItem();
+      item.dishId = "dish-" + i;
+      item.dishName = "Dish " + i;
+      item.qty = 1;
+      item.unitPrice = Money.parse("12.50");
+      item.lineTotal = item.unitPrice;
+      item.selectedOptions = new ArrayList<>();
+      for (int j = 0; j < OPTIONS_PER_ITEM; j++) {
+        SelectedOption option = new SelectedOption();
+        option.groupId = "g" + j;
+        option.groupName = "Group " + j;
+        option.optionId = "opt-" + j;
+        option.optionName = "Option " + j;
+        option.extraPrice = Money.parse("1.00");
+        item.selectedOptions.add(option);
+      }
+      order.items.add(item);
+    }
+    return order;
+  }
+
+  private static void cleanup(JdbcTemplate jdbcTemplate) {
+    jdbcTemplate.update("DELETE o FROM order_item_options o JOIN order_items i ON i.id = o.order_item_id "
+        + "JOIN orders r ON r.id = i.order_id WHERE r.store_id=?", STORE);
+    jdbcTemplate.update("DELETE i FROM order_items i JOIN orders r ON r.id = i.order_id WHERE r.store_id=?", STORE);
+    jdbcTemplate.update("DELETE FROM orders WHERE store_id=?", STORE);
+  }
+}
@@ -0,0 +1,113 @@
+package com.smartorder.service;
+
+import static com.smartorder.service.PromotionPlanTest.line;
+import static com.smartorder.service.PromotionPlanTest.rule;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.smartorder.model.CartItem;
+import com.smartorder.model.Dish;
+import com.smartorder.model.Menu;
+import com.smartorder.model.MenuCategory;
+import com.smartorder.model.Money;
+import com.smartorder.model.Promotion;
+import com.smartorder.model.PromotionKind;
+import com.smartorder.model.PromotionScope;
+import com.smartorder.model.TableCart;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+// Evaluation cost of a compiled plan with hundreds of active rules against a large cart. mvn -Pbenchmark test
+@Tag("benchmark")
+class PromotionPlanBenchmark {
+  private static final int CATEGORIES = 40;
+  private static final int DISHES_PER_CATEGORY = 50;
+  private static final int CART_LINES = 200;
+  private static final int WARMUP = 2_000;
+  private static final int RUNS = 20_000;
+
+  @Test
+  void applyWithHundredsOfRules() {
+    Random random = new Random(7);
+    MenuPriceIndex menu = MenuPriceIndex.compile(menu());
+    for (int ruleCount : new int[] {100, 500, 1_000}) {
+      List<Promotion> promotions = promotions(random, ruleCount);
+      long compileStart = System.nanoTime();
+      PromotionPlan plan = PromotionPlan.compile(menu, promotions);
+      long compileNanos = System.nanoTime() - compileStart;
+      TableCart cart = cart(random);
+
+      long checksum = 0;
+      for (int i = 0; i < WARMUP; i++) {
+        checksum += plan.apply(cart, LocalTime.of(18, 30)).discount.minor();
+      }
+      long start = System.nanoTime();
+      for (int i = 0; i < RUNS; i++) {
+        checksum += plan.apply(cart, LocalTime.of(18, 30)).discount.minor();
+      }
+      double perCart = (System.nanoTime() - start) / (double) RUNS;
+      System.out.printf("rules=%d lines=%d compile=%.2fms apply=%.1fus/cart (%.0fns/line)%n",
+          ruleCount, CART_LINES, compileNanos / 1e6, perCart / 1e3, perCart / CART_LINES);
+      assertThat(checksum).isPositive();
+    }
+  }
+
+  private static List<Promotion> promotions(Random random, int count) {
+    List<Promotion> promotions = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int kind = random.nextInt(3);
+      Promotion promotion = switch (random.nextInt(10)) {
+        case 0 -> rule("r" + i, PromotionKind.PERCENT_OFF, PromotionScope.STORE, null, 5, null, null);
+        case 1, 2, 3 -> rule("r" + i, PromotionKind.PERCENT_OFF, PromotionScope.CATEGORY,
+            "c" + random.nextInt(CATEGORIES), 5 + random.nextInt(30), null, null);
+        default -> kind == 0
+            ? rule("r" + i, PromotionKind.AMOUNT_OFF, PromotionScope.DISH, dishId(random), null, "1.50", null)
+            : rule("r" + i, PromotionKind.NTH_ITEM_PERCENT_OFF, PromotionScope.DISH, dishId(random), 50, null, 2);
+      };
+      if (i % 4 == 0) {
+        promotion.startTime = LocalTime.of(17, 0);
+        promotion.endTime = LocalTime.of(19, 0);
+      }
+      promotions.add(promotion);
+    }
+    return promotions;
+  }
+
+  private static TableCart cart(Random random) {
+    TableCart cart = new TableCart();
+    cart.storeId = "s1";
+    cart.tableNo = "T1";
+    for (int i = 0; i < CART_LINES; i++) {
+      CartItem item = line(dishId(random), "12.80", 1 + random.nextInt(4));
+      item.id = (long) i;
+      cart.items.add(item);
+    }
+    return cart;
+  }
+
+  private static String dishId(Random random) {
+    return "c" + random.nextInt(CATEGORIES) + "-d" + random.nextInt(DISHES_PER_CATEGORY);
+  }
+
+  private static Menu menu() {
+    Menu menu = new Menu();
+    for (int c = 0; c < CATEGORIES; c++) {
+      MenuCategory category = new MenuCategory();
+      category.id = "c" + c;
+      category.name = "Category " + c;
+      for (int d = 0; d < DISHES_PER_CATEGORY; d++) {
+        Dish dish = new Dish();
+        dish.id = "c" + c + "-d" + d;
+        dish.categoryId = category.id;
+        dish.name = "Dish " + dish.id;
+        dish.price = Money.parse("12.80");
+        category.dishes.add(dish);
+      }
+      menu.categories.add(category);
+    }
+    return menu;
+  }
+}
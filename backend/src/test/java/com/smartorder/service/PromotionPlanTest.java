@@ -0,0 +1,135 @@
+package com.smartorder.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.smartorder.model.CartItem;
+import com.smartorder.model.CartPricing;
+import com.smartorder.model.Dish;
+import com.smartorder.model.Menu;
+import com.smartorder.model.MenuCategory;
+import com.smartorder.model.Money;
+import com.smartorder.model.Promotion;
+import com.smartorder.model.PromotionKind;
+import com.smartorder.model.PromotionScope;
+import com.smartorder.model.TableCart;
+import java.time.LocalTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class PromotionPlanTest {
+  private static final LocalTime NOON = LocalTime.NOON;
+
+  private final MenuPriceIndex menu = MenuPriceIndex.compile(menu());
+
+  @Test
+  void percentOffRoundsHalfUpToTheCent() {
+    PromotionPlan plan = PromotionPlan.compile(menu, List.of(rule("p1", PromotionKind.PERCENT_OFF,
+        PromotionScope.DISH, "beer", 15, null, null)));
+
+    CartPricing pricing = plan.apply(cart(line("beer", "4.99", 1)), NOON);
+
+    // 15% of 4.99 = 0.7485
+    assertThat(pricing.discount).isEqualTo(Money.parse("0.75"));
+    assertThat(pricing.total).isEqualTo(Money.parse("4.24"));
+  }
+
+  @Test
+  void secondDrinkHalfPriceOnlyCountsCompletePairs() {
+    PromotionPlan plan = PromotionPlan.compile(menu, List.of(rule("p1", PromotionKind.NTH_ITEM_PERCENT_OFF,
+        PromotionScope.CATEGORY, "drinks", 50, null, 2)));
+
+    CartPricing pricing = plan.apply(cart(line("beer", "6.00", 3), line("noodles", "10.00", 2)), NOON);
+
+    assertThat(pricing.subtotal).isEqualTo(Money.parse("38.00"));
+    assertThat(pricing.discount).isEqualTo(Money.parse("3.00"));
+    assertThat(pricing.discounts).singleElement().satisfies(d -> assertThat(d.dishId).isEqualTo("beer"));
+  }
+
+  @Test
+  void eachLineTakesOnlyTheBestRule() {
+    Promotion storeWide = rule("store", PromotionKind.PERCENT_OFF, PromotionScope.STORE, null, 10, null, null);
+    Promotion dish = rule("dish", PromotionKind.AMOUNT_OFF, PromotionScope.DISH, "noodles", null, "2.00", null);
+    PromotionPlan plan = PromotionPlan.compile(menu, List.of(storeWide, dish));
+
+    CartPricing pricing = plan.apply(cart(line("noodles", "10.00", 2), line("beer", "6.00", 1)), NOON);
+
+    assertThat(pricing.discounts).extracting(d -> d.promotionId).containsExactly("dish", "store");
+    assertThat(pricing.discount).isEqualTo(Money.parse("4.60"));
+  }
+
+  @Test
+  void amountOffNeverExceedsTheUnitPrice() {
+    PromotionPlan plan = PromotionPlan.compile(menu, List.of(rule("p1", PromotionKind.AMOUNT_OFF,
+        PromotionScope.DISH, "beer", null, "9.00", null)));
+
+    assertThat(plan.apply(cart(line("beer", "6.00", 2)), NOON).total).isEqualTo(Money.ZERO);
+  }
+
+  @Test
+  void happyHourAcrossMidnightAndInactiveRules() {
+    Promotion lateNight = rule("late", PromotionKind.PERCENT_OFF, PromotionScope.STORE, null, 20, null, null);
+    lateNight.startTime = LocalTime.of(22, 0);
+    lateNight.endTime = LocalTime.of(2, 0);
+    Promotion disabled = rule("off", PromotionKind.PERCENT_OFF, PromotionScope.STORE, null, 90, null, null);
+    disabled.active = false;
+    PromotionPlan plan = PromotionPlan.compile(menu, List.of(lateNight, disabled));
+    TableCart cart = cart(line("noodles", "10.00", 1));
+
+    assertThat(plan.apply(cart, LocalTime.of(23, 30)).discount).isEqualTo(Money.parse("2.00"));
+    assertThat(plan.apply(cart, LocalTime.of(1, 59)).discount).isEqualTo(Money.parse("2.00"));
+    assertThat(plan.apply(cart, LocalTime.of(2, 0)).discount).isEqualTo(Money.ZERO);
+    assertThat(plan.apply(cart, NOON).discount).isEqualTo(Money.ZERO);
+  }
+
+  static Promotion rule(String id, PromotionKind kind, PromotionScope scope, String targetId, Integer percentOff,
+                        String amountOff, Integer nth) {
+    Promotion promotion = new Promotion();
+    promotion.id = id;
+    promotion.storeId = "s1";
+    promotion.name = id;
+    promotion.kind = kind;
+    promotion.scope = scope;
+    promotion.targetId = targetId;
+    promotion.percentOff = percentOff;
+    promotion.amountOff = amountOff == null ? null : Money.parse(amountOff);
+    promotion.nth = nth;
+    return promotion;
+  }
+
+  static CartItem line(String dishId, String unitPrice, int qty) {
+    CartItem item = new CartItem();
+    item.dishId = dishId;
+    item.unitPrice = Money.parse(unitPrice);
+    item.qty = qty;
+    item.optionSignature = "";
+    return item;
+  }
+
+  private static TableCart cart(CartItem... items) {
+    TableCart cart = new TableCart();
+    cart.storeId = "s1";
+    cart.tableNo = "T1";
+    cart.items = List.of(items);
+    return cart;
+  }
+
+  private static Menu menu() {
+    Menu menu = new Menu();
+    menu.categories.add(category("drinks", "beer"));
+    menu.categories.add(category("mains", "noodles"));
+    return menu;
+  }
+
+  private static MenuCategory category(String id, String dishId) {
+    MenuCategory category = new MenuCategory();
+    category.id = id;
+    category.name = id;
+    Dish dish = new Dish();
+    dish.id = dishId;
+    dish.categoryId = id;
+    dish.name = dishId;
+    dish.price = Money.parse("1.00");
+    category.dishes.add(dish);
+    return category;
+  }
+}
@@ -0,0 +1,113 @@
+package com.smartorder.ws;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartorder.api.dto.WsEvent;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+class RedisWsRelayTest {
+  private static final String CHANNEL = "ws:events";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final WsTopics topics = new WsTopics("/topic");
+  // stands in for Redis pub/sub: every message sent on the channel reaches every subscribed node, the sender included
+  private final List<RedisWsRelay> subscribers = new ArrayList<>();
+  private boolean redisDown;
+  private Node a;
+  private Node b;
+
+  @BeforeEach
+  void setUp() {
+    a = new Node("node-a");
+    b = new Node("node-b");
+  }
+
+  @Test
+  void eventPublishedOnOneNodeReachesSessionsOnTheOther() {
+    a.publisher.publish("ORDER_CREATED", Map.of("orderId", "o1"), topics.kitchen("s1"));
+
+    WsEvent local = deliveredOnce(a);
+    WsEvent relayed = deliveredOnce(b);
+    assertThat(relayed.eventId).isEqualTo(local.eventId);
+    assertThat(relayed.seq).isEqualTo(local.seq);
+    assertThat(relayed.storeId).isEqualTo("s1");
+    assertThat(relayed.type).isEqualTo("ORDER_CREATED");
+  }
+
+  @Test
+  void originNodeDoesNotDeliverItsOwnEventTwice() {
+    a.publisher.publish("ORDER_CREATED", Map.of("orderId", "o1"), topics.kitchen("s1"));
+
+    verify(a.delivery, times(1)).deliver(any(), any());
+  }
+
+  @Test
+  void repeatedEnvelopeIsDeliveredOnce() {
+    WsEvent event = a.publisher.event("outbox-7", "ORDER_CREATED", Map.of("orderId", "o1"), topics.kitchen("s1"));
+    a.publisher.deliver(event, topics.kitchen("s1"));
+    a.publisher.forward(event, topics.kitchen("s1"));
+    a.publisher.forward(event, topics.kitchen("s1"));
+
+    verify(b.delivery, times(1)).deliver(any(), any());
+  }
+
+  @Test
+  void forwardFailsWhenRedisIsDownButPublishStaysBestEffort() {
+    redisDown = true;
+    WsEvent event = a.publisher.event("outbox-8", "ORDER_CREATED", Map.of(), topics.kitchen("s1"));
+
+    assertThatThrownBy(() -> a.publisher.forward(event, topics.kitchen("s1")))
+        .isInstanceOf(RedisConnectionFailureException.class);
+    assertThatCode(() -> a.publisher.publish("ORDER_CREATED", Map.of(), topics.kitchen("s1")))
+        .doesNotThrowAnyException();
+    verify(b.delivery, times(0)).deliver(any(), any());
+  }
+
+  private WsEvent deliveredOnce(Node node) {
+    ArgumentCaptor<WsEvent> captor = ArgumentCaptor.forClass(WsEvent.class);
+    verify(node.delivery, times(1)).deliver(captor.capture(), any());
+    return captor.getValue();
+  }
+
+  private class Node {
+    final WsDelivery delivery = mock(WsDelivery.class);
+    final RedisWsRelay relay;
+    final WsPublisher publisher;
+
+    Node(String id) {
+      StringRedisTemplate redis = mock(StringRedisTemplate.class);
+      when(redis.convertAndSend(anyString(), any())).thenAnswer(invocation -> {
+        if (redisDown) {
+          throw new RedisConnectionFailureException("connection refused");
+        }
+        byte[] body = ((String) invocation.getArgument(1)).getBytes(StandardCharsets.UTF_8);
+        for (RedisWsRelay subscriber : subscribers) {
+          subscriber.onMessage(new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), body), null);
+        }
+        return (long) subscribers.size();
+      });
+      WsNode node = new WsNode(id);
+      relay = new RedisWsRelay(redis, delivery, objectMapper, node, CHANNEL, 64);
+      publisher = new WsPublisher(delivery, relay, node, topics, new WsSequence(redis, "local"));
+      subscribers.add(relay);
+    }
+  }
+}
@@ -13,7 +13,7 @@ async function resolve() {
       statusEl.textContent = "Code not found.";
       return;
     }
-    const url = `/customer/?storeId=${encodeURIComponent(res.storeId)}&tableNo=${encodeURIComponent(res.tableNo)}`;
+    const url = `/customer/?storeId=${encodeURIComponent(res.storeId)}&tableNo=${encodeURIComponent(res.tableNo)}&code=${encodeURIComponent(code)}`;
     window.location.href = url;
   } catch (err) {
     statusEl.textContent = err.message;
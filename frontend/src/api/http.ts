@@ -69,7 +69,7 @@ export async function refreshAccess(mode: AuthMode) {
   return true;
 }
 
-async function fetchWithAuth(path: string, options: RequestInit = {}) {
+async function fetchResponse(path: string, options: RequestInit = {}) {
   const mode: AuthMode = path.startsWith("/api/platform") ? "platform" : "store";
   const headers = new Headers(options.headers || {});
   const accessToken = getAccessToken(mode);
@@ -91,7 +91,11 @@ async function fetchWithAuth(path: string, options: RequestInit = {}) {
     const text = await response.text();
     throw new Error(text || "Request failed");
   }
+  return response;
+}
 
+async function fetchWithAuth(path: string, options: RequestInit = {}) {
+  const response = await fetchResponse(path, options);
   const contentType = response.headers.get("content-type") || "";
   if (contentType.includes("application/json")) {
     return response.json();
@@ -103,10 +107,24 @@ export async function apiGet(path: string) {
   return fetchWithAuth(path, { method: "GET" });
 }
 
-export async function apiPost(path: string, body?: unknown) {
+// follows X-Next-Cursor until the last page and returns every item
+export async function apiGetAllPages(path: string) {
+  const items: any[] = [];
+  let cursor: string | null = null;
+  do {
+    const sep = path.includes("?") ? "&" : "?";
+    const url: string = cursor ? `${path}${sep}cursor=${encodeURIComponent(cursor)}` : path;
+    const response = await fetchResponse(url, { method: "GET" });
+    items.push(...((await response.json()) || []));
+    cursor = response.headers.get("X-Next-Cursor");
+  } while (cursor);
+  return items;
+}
+
+export async function apiPost(path: string, body?: unknown, headers?: Record<string, string>) {
   return fetchWithAuth(path, {
     method: "POST",
-    headers: { "Content-Type": "application/json" },
+    headers: { "Content-Type": "application/json", ...headers },
     body: JSON.stringify(body || {}),
   });
 }
@@ -1,33 +1,116 @@
 import SockJS from "sockjs-client";
 import Stomp from "stompjs";
+import { getAccessToken } from "./http";
 
 const WS_URL =
   (window as typeof window & { WS_URL?: string }).WS_URL ||
   import.meta.env.VITE_WS_URL ||
   "/ws";
 
+const RECONNECT_DELAY_MS = 3000;
+const SEEN_LIMIT = 2048;
+
 export type WsEvent = {
+  eventId?: string;
+  storeId?: string;
+  seq?: number;
   type: string;
   payload?: unknown;
 };
 
-export function connectWs(onEvent?: (event: WsEvent) => void) {
-  const socket = new SockJS(WS_URL);
-  const client = Stomp.over(socket);
-  client.connect({}, () => {
-    client.subscribe("/topic/events", (message) => {
-      try {
-        const payload = JSON.parse(message.body) as WsEvent;
-        onEvent?.(payload);
-      } catch {
-        // ignore
+type WsResume = {
+  destination: string;
+  status: "OK" | "RESYNC";
+  latestSeq: number;
+  events: WsEvent[];
+};
+
+export const topics = {
+  kitchen: (storeId: string) => `/topic/store/${storeId}/kitchen`,
+  cashier: (storeId: string) => `/topic/store/${storeId}/cashier`,
+  menu: (storeId: string) => `/topic/store/${storeId}/menu`,
+  table: (storeId: string, tableNo: string) => `/topic/store/${storeId}/table/${tableNo}`,
+};
+
+export function connectWs(
+  destinations: string[],
+  onEvent?: (event: WsEvent) => void,
+  options: { tableCode?: string | null; onResync?: () => void } = {},
+) {
+  const lastSeq: Record<string, number> = {};
+  const seen = new Set<string>();
+  let client: ReturnType<typeof Stomp.over> | null = null;
+  let closed = false;
+  let retry: ReturnType<typeof setTimeout> | null = null;
+
+  // Events relayed from other nodes can arrive out of seq order, so duplicates are dropped by eventId and seq only
+  // tracks the resume point.
+  const deliver = (destination: string, event: WsEvent) => {
+    if (event.eventId) {
+      const key = `${destination}|${event.eventId}`;
+      if (seen.has(key)) return;
+      seen.add(key);
+      if (seen.size > SEEN_LIMIT) {
+        seen.delete(seen.values().next().value as string);
       }
-    });
-  });
+    }
+    if (event.seq && event.seq > (lastSeq[destination] || 0)) {
+      lastSeq[destination] = event.seq;
+    }
+    onEvent?.(event);
+  };
+
+  const connect = (resuming: boolean) => {
+    const socket = new SockJS(WS_URL);
+    const stomp = Stomp.over(socket);
+    client = stomp;
+    const headers: Record<string, string> = {};
+    const accessToken = getAccessToken("store");
+    if (accessToken) headers.Authorization = `Bearer ${accessToken}`;
+    if (options.tableCode) headers.tableCode = options.tableCode;
+    stomp.connect(
+      headers,
+      () => {
+        stomp.subscribe("/user/queue/resume", (message) => {
+          try {
+            const resume = JSON.parse(message.body) as WsResume;
+            if (resume.status === "RESYNC") {
+              lastSeq[resume.destination] = resume.latestSeq;
+              options.onResync?.();
+              return;
+            }
+            resume.events.forEach((event) => deliver(resume.destination, event));
+          } catch {
+            // ignore
+          }
+        });
+        destinations.forEach((destination) => {
+          stomp.subscribe(destination, (message) => {
+            try {
+              deliver(destination, JSON.parse(message.body) as WsEvent);
+            } catch {
+              // ignore
+            }
+          });
+          if (resuming) {
+            stomp.send("/app/resume", {}, JSON.stringify({ destination, lastSeq: lastSeq[destination] || 0 }));
+          }
+        });
+      },
+      () => {
+        if (closed) return;
+        retry = setTimeout(() => connect(true), RECONNECT_DELAY_MS);
+      },
+    );
+  };
+
+  connect(false);
 
   return () => {
+    closed = true;
+    if (retry) clearTimeout(retry);
     try {
-      client.disconnect(() => undefined);
+      client?.disconnect(() => undefined);
     } catch {
       // ignore
     }
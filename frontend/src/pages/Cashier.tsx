@@ -1,6 +1,6 @@
 ﻿import { useEffect, useMemo, useState } from "react";
-import { apiGet, apiPatch, apiPost, getStoreIdentity } from "../api/http";
-import { connectWs } from "../api/ws";
+import { apiGetAllPages, apiPatch, apiPost, getStoreIdentity } from "../api/http";
+import { connectWs, topics } from "../api/ws";
 import { useNavigate } from "react-router-dom";
 
 export default function Cashier() {
@@ -13,11 +13,9 @@ export default function Cashier() {
 
   const loadOrders = async () => {
     if (!storeId) return;
-    const query = new URLSearchParams({ storeId });
+    const query = new URLSearchParams({ storeId, open: "true", limit: "200" });
     if (tableFilter) query.set("tableNo", tableFilter);
-    const data = await apiGet(`/api/orders?${query.toString()}`);
-    const active = (data || []).filter((o: any) => o.status !== "CLOSED");
-    setOrders(active);
+    setOrders(await apiGetAllPages(`/api/orders?${query.toString()}`));
   };
 
   useEffect(() => {
@@ -25,7 +23,8 @@ export default function Cashier() {
   }, [storeId, tableFilter]);
 
   useEffect(() => {
-    const disconnect = connectWs(() => loadOrders());
+    if (!storeId) return;
+    const disconnect = connectWs([topics.cashier(storeId)], () => loadOrders(), { onResync: loadOrders });
     return () => disconnect();
   }, [storeId, tableFilter]);
 
@@ -1,6 +1,6 @@
-﻿import { useEffect, useMemo, useState } from "react";
-import { apiDelete, apiGet, apiPatch, apiPost } from "../api/http";
-import { connectWs } from "../api/ws";
+﻿import { useEffect, useMemo, useRef, useState } from "react";
+import { apiDelete, apiGet, apiGetAllPages, apiPatch, apiPost } from "../api/http";
+import { connectWs, topics } from "../api/ws";
 
 type Dish = {
   id: string;
@@ -9,7 +9,11 @@ type Dish = {
   description?: string;
   ingredients?: string;
   calories?: number;
+  allergens?: string;
   imageUrl?: string;
+  tags?: string[];
+  spicyLevel?: string;
+  hasOptions?: boolean;
   optionGroups?: OptionGroup[];
   aiReason?: string;
 };
@@ -26,6 +30,14 @@ type Menu = {
 };
 
 type Cart = {
+  version?: number;
+  items: any[];
+};
+
+type CartDelta = {
+  baseVersion: number;
+  version: number;
+  cleared: boolean;
   items: any[];
 };
 
@@ -37,7 +49,8 @@ export default function Customer() {
   const [remark, setRemark] = useState("");
   const [step, setStep] = useState<"bind" | "start" | "ai" | "menu">("bind");
   const [menu, setMenu] = useState<Menu | null>(null);
-  const [cart, setCart] = useState<Cart>({ items: [] });
+  const [cart, setCartState] = useState<Cart>({ items: [] });
+  const cartRef = useRef<Cart>({ items: [] });
   const [orders, setOrders] = useState<any[]>([]);
   const [aiInput, setAiInput] = useState("");
   const [aiResult, setAiResult] = useState<any[]>([]);
@@ -46,9 +59,12 @@ export default function Customer() {
   const [adjustInput, setAdjustInput] = useState("");
   const [pendingAdjust, setPendingAdjust] = useState<Dish[]>([]);
   const [optionDish, setOptionDish] = useState<Dish | null>(null);
+  const [detailDish, setDetailDish] = useState<Dish | null>(null);
+  const dishDetails = useRef<Record<string, Dish>>({});
   const [optionSelections, setOptionSelections] = useState<Record<string, string[]>>({});
 
   const clientId = useMemo(() => getClientId(), []);
+  const orderKey = useRef<string | null>(null);
 
   useEffect(() => {
     if (!storeId) return;
@@ -58,16 +74,26 @@ export default function Customer() {
   useEffect(() => {
     if (!tableNo || !storeId) return;
     decideInitialStep();
-    const disconnect = connectWs((event) => {
+    const disconnect = connectWs([topics.table(storeId, tableNo)], (event) => {
       if (event.type === "CART_UPDATED") {
         const payload: any = event.payload;
         if (payload?.tableNo === tableNo) {
-          setCart(payload);
+          applyCartDelta(payload);
         }
       }
+      if (event.type === "CART_CHECKED_OUT") {
+        setCart({ items: [] });
+        loadOrders();
+      }
       if (event.type === "ORDER_CREATED" || event.type === "ORDER_UPDATED") {
         loadOrders();
       }
+    }, {
+      tableCode: query.get("code"),
+      onResync: () => {
+        loadCart();
+        loadOrders();
+      },
     });
     return () => disconnect();
   }, [storeId, tableNo]);
@@ -79,10 +105,37 @@ export default function Customer() {
   }, [step, storeId, tableNo]);
 
   const loadMenu = async () => {
-    const data = await apiGet(`/api/menu/${storeId}`);
+    const data = await apiGet(`/api/menu/${storeId}/lite`);
+    dishDetails.current = {};
     setMenu(data as Menu);
   };
 
+  const loadDish = async (dish: Dish) => {
+    const cached = dishDetails.current[dish.id];
+    if (cached) return cached;
+    const data = (await apiGet(`/api/menu/${storeId}/dishes/${dish.id}`)) as Dish;
+    dishDetails.current[dish.id] = data;
+    return data;
+  };
+
+  const openDetail = async (dish: Dish) => {
+    setDetailDish(await loadDish(dish));
+  };
+
+  const setCart = (next: Cart) => {
+    cartRef.current = next;
+    setCartState(next);
+  };
+
+  const applyCartDelta = (delta: CartDelta) => {
+    const next = mergeCartDelta(cartRef.current, delta);
+    if (next) {
+      setCart(next);
+    } else {
+      loadCart();
+    }
+  };
+
   const loadCart = async () => {
     if (!tableNo) return { items: [] };
     const data = await apiGet(`/api/cart?storeId=${storeId}&tableNo=${tableNo}`);
@@ -92,8 +145,7 @@ export default function Customer() {
 
   const loadOrders = async () => {
     if (!tableNo) return [];
-    const data = await apiGet(`/api/orders?storeId=${storeId}&tableNo=${tableNo}`);
-    const active = (data || []).filter((o: any) => o.status !== "CLOSED");
+    const active = await apiGetAllPages(`/api/orders?storeId=${storeId}&tableNo=${tableNo}&open=true&limit=200`);
     setOrders(active);
     return active;
   };
@@ -145,7 +197,7 @@ export default function Customer() {
       unitPrice: Number(dish.price) + extra,
       selectedOptions,
     });
-    setCart(data as Cart);
+    applyCartDelta(data as CartDelta);
   };
 
   const updateQty = async (dishId: string, qty: number, optionSignature?: string) => {
@@ -153,10 +205,10 @@ export default function Customer() {
     if (qty <= 0) {
       const sig = optionSignature ? `&optionSignature=${encodeURIComponent(optionSignature)}` : "";
       const data = await apiDelete(`/api/cart/items?storeId=${storeId}&tableNo=${tableNo}&dishId=${dishId}${sig}`);
-      setCart(data as Cart);
+      applyCartDelta(data as CartDelta);
     } else {
       const data = await apiPatch("/api/cart/items", { storeId, tableNo, dishId, optionSignature, qty });
-      setCart(data as Cart);
+      applyCartDelta(data as CartDelta);
     }
   };
 
@@ -164,16 +216,13 @@ export default function Customer() {
     if (!tableNo) return;
     const items = cart.items || [];
     if (items.length === 0) return;
-    const orderItems = items.map((item: any) => ({ ...item, lineTotal: item.qty * item.unitPrice }));
-    const order = await apiPost("/api/orders", {
-      storeId,
-      tableNo,
-      peopleCount,
-      remark,
-      clientId,
-      items: orderItems,
-    });
-    await apiPost("/api/cart/clear", { storeId, tableNo });
+    if (!orderKey.current) orderKey.current = crypto.randomUUID();
+    const order = await apiPost(
+      "/api/cart/checkout",
+      { storeId, tableNo, peopleCount, remark, clientId },
+      { "Idempotency-Key": orderKey.current }
+    );
+    orderKey.current = null;
     setCart({ items: [] });
     await loadOrders();
     setStep("menu");
@@ -223,8 +272,8 @@ export default function Customer() {
 
   const applyAdjust = async () => {
     if (adjustMode === "replace") {
-      await apiPost("/api/cart/clear", { storeId, tableNo });
-      setCart({ items: [] });
+      const data = await apiPost("/api/cart/clear", { storeId, tableNo });
+      applyCartDelta(data as CartDelta);
     }
     for (const dish of pendingAdjust) {
       await addToCart(dish, 1);
@@ -235,7 +284,8 @@ export default function Customer() {
   const totalCount = (cart.items || []).reduce((sum: number, item: any) => sum + (item.qty || 0), 0);
   const totalAmount = (cart.items || []).reduce((sum: number, item: any) => sum + (item.qty || 0) * (item.unitPrice || 0), 0);
 
-  const openOptions = (dish: Dish) => {
+  const openOptions = async (lite: Dish) => {
+    const dish = lite.optionGroups ? lite : await loadDish(lite);
     setOptionDish(dish);
     const initial: Record<string, string[]> = {};
     dish.optionGroups?.forEach((group) => {
@@ -375,12 +425,12 @@ export default function Customer() {
                             <div style={{ flex: 1 }}>
                               <strong>{dish.name}</strong>
                               <p className="small">${dish.price}</p>
-                              {dish.description && <p className="small">{dish.description}</p>}
-                              {dish.ingredients && <p className="small">原料: {dish.ingredients}</p>}
-                              {dish.calories && <p className="small">{dish.calories} kcal</p>}
+                              {dish.spicyLevel && <p className="small">辣度: {dish.spicyLevel}</p>}
+                              {dish.tags && dish.tags.length > 0 && <p className="small">{dish.tags.join(" · ")}</p>}
                             </div>
                             <div className="toolbar" style={{ alignSelf: "center" }}>
-                              <button onClick={() => (dish.optionGroups?.length ? openOptions(dish) : addToCart(dish))}>
+                              <button className="ghost" onClick={() => openDetail(dish)}>详情</button>
+                              <button onClick={() => (dish.hasOptions || dish.optionGroups?.length ? openOptions(dish) : addToCart(dish))}>
                                 加入
                               </button>
                             </div>
@@ -467,6 +517,32 @@ export default function Customer() {
           </section>
         )}
 
+        {detailDish && (
+          <div className="page centered" style={{ position: "fixed", inset: 0, background: "rgba(0,0,0,0.4)", zIndex: 20 }}>
+            <div className="card" style={{ maxWidth: 460, width: "90%" }}>
+              <h2>{detailDish.name}</h2>
+              <p className="small">${detailDish.price}</p>
+              {detailDish.description && <p className="small">{detailDish.description}</p>}
+              {detailDish.ingredients && <p className="small">原料: {detailDish.ingredients}</p>}
+              {detailDish.allergens && <p className="small">过敏原: {detailDish.allergens}</p>}
+              {detailDish.calories && <p className="small">{detailDish.calories} kcal</p>}
+              <div className="toolbar" style={{ marginTop: 12 }}>
+                <button
+                  onClick={() => {
+                    const dish = detailDish;
+                    setDetailDish(null);
+                    if (dish.optionGroups?.length) openOptions(dish);
+                    else addToCart(dish);
+                  }}
+                >
+                  加入
+                </button>
+                <button className="ghost" onClick={() => setDetailDish(null)}>关闭</button>
+              </div>
+            </div>
+          </div>
+        )}
+
         {optionDish && (
           <div className="page centered" style={{ position: "fixed", inset: 0, background: "rgba(0,0,0,0.4)", zIndex: 20 }}>
             <div className="card" style={{ maxWidth: 460, width: "90%" }}>
@@ -568,6 +644,26 @@ function findDish(menu: Menu, dishId?: string, dishName?: string) {
   return null;
 }
 
+function mergeCartDelta(cart: Cart, delta: CartDelta): Cart | null {
+  const version = cart.version ?? -1;
+  if (version >= delta.version) return cart;
+  if (version < delta.baseVersion) return null;
+  const lineKey = (item: any) => `${item.dishId}|${item.optionSignature || ""}`;
+  const items = delta.cleared ? [] : [...cart.items];
+  for (const line of delta.items) {
+    const index = items.findIndex((item) => lineKey(item) === lineKey(line));
+    const fields = Object.fromEntries(Object.entries(line).filter(([, value]) => value !== null && value !== undefined));
+    if (!line.qty || line.qty <= 0) {
+      if (index >= 0) items.splice(index, 1);
+    } else if (index >= 0) {
+      items[index] = { ...items[index], ...fields };
+    } else {
+      items.push(fields);
+    }
+  }
+  return { version: delta.version, items };
+}
+
 function getClientId() {
   const key = "smartorder-client-id";
   let value = localStorage.getItem(key);
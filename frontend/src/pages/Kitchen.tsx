@@ -1,19 +1,35 @@
-﻿import { useEffect, useMemo, useState } from "react";
-import { apiGet, apiPatch, getStoreIdentity } from "../api/http";
-import { connectWs } from "../api/ws";
+﻿import { useEffect, useMemo, useRef, useState } from "react";
+import { apiGet, apiGetAllPages, apiPatch, getStoreIdentity } from "../api/http";
+import { connectWs, topics, WsEvent } from "../api/ws";
 import { useNavigate } from "react-router-dom";
 
+type PrepLine = { dishId: string; dishName: string; optionSignature: string; options: string; qty: number };
+type PrepBoard = { version: number; lines: PrepLine[] };
+type PrepBoardDelta = { baseVersion: number; version: number; lines: PrepLine[] };
+
 export default function Kitchen() {
   const navigate = useNavigate();
   const identity = useMemo(() => getStoreIdentity(), []);
   const [storeId, setStoreId] = useState(identity.storeId || "");
   const [status, setStatus] = useState("");
   const [orders, setOrders] = useState<any[]>([]);
+  const [board, setBoardState] = useState<PrepBoard>({ version: -1, lines: [] });
+  const boardRef = useRef(board);
+
+  const setBoard = (next: PrepBoard) => {
+    boardRef.current = next;
+    setBoardState(next);
+  };
 
   const loadOrders = async () => {
     if (!storeId) return;
-    const data = await apiGet(`/api/orders?storeId=${storeId}&status=${status}`);
-    setOrders(data || []);
+    setOrders(await apiGetAllPages(`/api/orders?storeId=${storeId}&status=${status}&limit=200`));
+  };
+
+  const loadBoard = async () => {
+    if (!storeId) return;
+    const data = await apiGet(`/api/kitchen/${storeId}/prep-board`);
+    if (data) setBoard(data);
   };
 
   useEffect(() => {
@@ -21,12 +37,34 @@ export default function Kitchen() {
   }, [storeId, status]);
 
   useEffect(() => {
-    const disconnect = connectWs(() => loadOrders());
+    loadBoard();
+  }, [storeId]);
+
+  useEffect(() => {
+    if (!storeId) return;
+    const onEvent = (event: WsEvent) => {
+      if (event.type === "PREP_BOARD_UPDATED") {
+        const next = mergePrepDelta(boardRef.current, event.payload as PrepBoardDelta);
+        if (next) setBoard(next);
+        else loadBoard();
+        return;
+      }
+      loadOrders();
+    };
+    const resync = () => {
+      loadOrders();
+      loadBoard();
+    };
+    const disconnect = connectWs([topics.kitchen(storeId)], onEvent, { onResync: resync });
     return () => disconnect();
   }, [storeId, status]);
 
-  const updateStatus = async (orderId: string, next: string) => {
-    await apiPatch(`/api/orders/${orderId}/status`, { status: next });
+  const updateStatus = async (order: any, next: string) => {
+    try {
+      await apiPatch(`/api/orders/${order.orderId}/status`, { status: next, version: order.version });
+    } catch {
+      // 409 when another device moved the order first; reload shows the current state
+    }
     await loadOrders();
   };
 
@@ -79,6 +117,16 @@ export default function Kitchen() {
           </div>
         </section>
 
+        <section className="card" style={{ marginTop: 16 }}>
+          <strong>待制作汇总</strong>
+          {board.lines.length === 0 && <p className="small">暂无待制作菜品</p>}
+          {board.lines.map((line) => (
+            <p key={`${line.dishId}|${line.optionSignature}`} className="small">
+              {line.dishName}{line.options ? ` (${line.options})` : ""} x{line.qty}
+            </p>
+          ))}
+        </section>
+
         <section className="list" style={{ marginTop: 16 }}>
           {orders.length === 0 && <div className="card">暂无订单</div>}
           {orders.map((order) => (
@@ -95,10 +143,10 @@ export default function Kitchen() {
               </p>
               <div className="toolbar">
                 {order.status === "NEW" && (
-                  <button onClick={() => updateStatus(order.orderId, "ACCEPTED")}>接单</button>
+                  <button onClick={() => updateStatus(order, "ACCEPTED")}>接单</button>
                 )}
                 {order.status === "ACCEPTED" && (
-                  <button onClick={() => updateStatus(order.orderId, "READY")}>出餐</button>
+                  <button onClick={() => updateStatus(order, "READY")}>出餐</button>
                 )}
               </div>
             </div>
@@ -108,3 +156,21 @@ export default function Kitchen() {
     </div>
   );
 }
+
+function mergePrepDelta(board: PrepBoard, delta: PrepBoardDelta): PrepBoard | null {
+  if (board.version >= delta.version) return board;
+  if (board.version !== delta.baseVersion) return null;
+  const key = (line: PrepLine) => `${line.dishId}|${line.optionSignature}`;
+  const lines = [...board.lines];
+  for (const line of delta.lines) {
+    const index = lines.findIndex((item) => key(item) === key(line));
+    if (line.qty <= 0) {
+      if (index >= 0) lines.splice(index, 1);
+    } else if (index >= 0) {
+      lines[index] = line;
+    } else {
+      lines.push(line);
+    }
+  }
+  return { version: delta.version, lines };
+}
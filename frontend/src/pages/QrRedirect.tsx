@@ -25,7 +25,7 @@ export default function QrRedirect() {
           setError("二维码尚未绑定桌台");
           return;
         }
-        const target = `/customer?storeId=${encodeURIComponent(data.storeId)}&tableNo=${encodeURIComponent(data.tableNo)}`;
+        const target = `/customer?storeId=${encodeURIComponent(data.storeId)}&tableNo=${encodeURIComponent(data.tableNo)}&code=${encodeURIComponent(code)}`;
         navigate(target, { replace: true });
       } catch (err) {
         setError(err instanceof Error ? err.message : "二维码解析失败");
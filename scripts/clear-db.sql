@@ -8,11 +8,14 @@ DROP TABLE IF EXISTS carts;
 DROP TABLE IF EXISTS order_item_options;
 DROP TABLE IF EXISTS order_items;
 DROP TABLE IF EXISTS orders;
+DROP TABLE IF EXISTS outbox_events;
 
+DROP TABLE IF EXISTS promotions;
 DROP TABLE IF EXISTS option_items;
 DROP TABLE IF EXISTS option_groups;
 DROP TABLE IF EXISTS dishes;
 DROP TABLE IF EXISTS menu_categories;
+DROP TABLE IF EXISTS menu_versions;
 
 DROP TABLE IF EXISTS table_codes;
 DROP TABLE IF EXISTS tables;
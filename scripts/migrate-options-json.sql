@@ -0,0 +1,44 @@
+-- Move selected options into JSON columns on cart_items / order_items (MySQL 5.7.22+).
+-- Safe to re-run: each column is only added when information_schema shows it missing, and only lines whose
+-- options_json is still NULL are backfilled.
+-- The *_options tables are left in place; reads fall back to them for any line not yet migrated.
+
+SET @ddl = IF(
+  (SELECT COUNT(*) FROM information_schema.columns
+   WHERE table_schema = DATABASE() AND table_name = 'cart_items' AND column_name = 'options_json') = 0,
+  'ALTER TABLE cart_items ADD COLUMN options_json JSON NULL',
+  'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @ddl = IF(
+  (SELECT COUNT(*) FROM information_schema.columns
+   WHERE table_schema = DATABASE() AND table_name = 'order_items' AND column_name = 'options_json') = 0,
+  'ALTER TABLE order_items ADD COLUMN options_json JSON NULL',
+  'DO 0');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+UPDATE cart_items ci
+LEFT JOIN (
+  SELECT cart_item_id,
+         JSON_ARRAYAGG(JSON_OBJECT('groupId', group_id, 'groupName', group_name, 'optionId', option_id,
+                                   'optionName', option_name, 'extraPrice', extra_price)) AS options
+  FROM cart_item_options
+  GROUP BY cart_item_id
+) o ON o.cart_item_id = ci.id
+SET ci.options_json = COALESCE(o.options, JSON_ARRAY())
+WHERE ci.options_json IS NULL;
+
+UPDATE order_items oi
+LEFT JOIN (
+  SELECT order_item_id,
+         JSON_ARRAYAGG(JSON_OBJECT('groupId', group_id, 'groupName', group_name, 'optionId', option_id,
+                                   'optionName', option_name, 'extraPrice', extra_price)) AS options
+  FROM order_item_options
+  GROUP BY order_item_id
+) o ON o.order_item_id = oi.id
+SET oi.options_json = COALESCE(o.options, JSON_ARRAY())
+WHERE oi.options_json IS NULL;